@@ -0,0 +1,537 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+/**
+ * The ArrayIntelligence class is a family tree with the same operations as Intelligence, but its members are kept
+ * in parallel primitive arrays instead of Node objects. A member is an index (slot) into the arrays, deleted slots
+ * are reused through a free list, and the name of each slot is a plain reference in one more array. This makes
+ * each member a few array entries without object headers or references to follow: 21 bytes of primitives and one
+ * name reference, against a 40-byte Node object.
+ *
+ * The arrays grow by half of their size when they are full, so at most a third of the slots are unused after a
+ * growth. When deletions leave less than a quarter of the slots in use, the members are moved to the front of
+ * arrays twice their number, so the arrays never hold more than four slots per member; trimToSize moves them into
+ * arrays of exactly their number. Moving changes the slots, so a slot is only valid until the next change.
+ *
+ * Unlike Intelligence, a slot holds one member and there are no tied members, so adding a member with a GMS which
+ * is already in the family is refused with an IllegalArgumentException instead of changing the results.
+ */
+public class ArrayIntelligence {
+    // index used for "no member"
+    public static final int NIL = -1;
+    // capacity the arrays are not shrunk below
+    private static final int MIN_CAPACITY = 16;
+    // GMS of each member
+    private float[] gms;
+    // left inferior of each member, or the next free slot for a deleted member
+    private int[] left;
+    // right inferior of each member
+    private int[] right;
+    // height of each member, an AVL tree of 2^31 members is less than 45 high
+    private byte[] height;
+    // maximum number of independent members in the subtree of each member, when it is chosen
+    private int[] withMember;
+    // maximum number of independent members in the subtree of each member, when it is not chosen
+    private int[] withoutMember;
+    // name of each member, null for a free slot
+    private String[] names;
+    // number of slots used so far, free or not
+    private int used;
+    // first free slot, or NIL
+    private int freeSlot = NIL;
+    // number of members in the family tree
+    private int count;
+    // slot of the boss
+    private int boss = NIL;
+    /**
+     * Constructs an empty family tree with a small initial capacity.
+     */
+    public ArrayIntelligence(){
+        this(MIN_CAPACITY);
+    }
+    /**
+     * Constructs an empty family tree.
+     *
+     * @param capacity The number of members the arrays can hold before they grow.
+     */
+    public ArrayIntelligence(int capacity){
+        capacity = Math.max(capacity,1);
+        gms = new float[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new byte[capacity];
+        withMember = new int[capacity];
+        withoutMember = new int[capacity];
+        names = new String[capacity];
+    }
+    /**
+     * Adds a new member to the family tree.
+     *
+     * @param name The name of the added member
+     * @param number The GMS of the added member
+     * @param file The Writer object to log the operation.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     * @throws IllegalArgumentException If a member with the GMS is already in the family.
+     */
+    public void addNewMember(String name,float number,Writer file) throws IOException {
+        // a slot holds one member, so a tie is refused before anything is logged
+        if(search(number) != NIL){
+            throw new IllegalArgumentException("A member with GMS " + number + " is already in the family");
+        }
+        boss = addNewMember(name,number,boss,file);
+    }
+    /**
+     * Recursive helper method to add a new member to the family tree.
+     *
+     * @param name The name of the member to be added.
+     * @param number The GMS of the member to be added.
+     * @param node The current slot being processed.
+     * @param file The Writer object to log the operation.
+     * @return The slot on top of the subtree after adding the new member.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private int addNewMember(String name,float number,int node,Writer file) throws IOException {
+        // if node is empty, create new member
+        if(node == NIL){
+            return allocate(name,number);
+        }
+        if(number > gms[node]){
+            file.write(names[node] + " welcomed " + name + "\n");
+            // the arrays may grow during the call, so they are read again after it
+            int son = addNewMember(name,number,right[node],file);
+            right[node] = son;
+        }
+        else if(number < gms[node]){
+            file.write(names[node] + " welcomed " + name + "\n");
+            int son = addNewMember(name,number,left[node],file);
+            left[node] = son;
+        }
+        return balance(node);
+    }
+    /**
+     * Deletes a member from the family tree.
+     *
+     * @param name The name of the member to be deleted.
+     * @param number The GMS of the member to be deleted.
+     * @param file The Writer object to log the operation.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void deleteMember(String name,float number,Writer file) throws IOException {
+        boss = deleteMember(number,boss,file,true);
+        if(count < gms.length >> 2 && gms.length > MIN_CAPACITY){
+            compact(Math.max(count * 2,MIN_CAPACITY));
+        }
+    }
+    /**
+     * Recursive helper method to delete a member from the family tree.
+     *
+     * @param number The GMS of the member to be deleted.
+     * @param node The current slot being processed.
+     * @param file The Writer object to log the operation.
+     * @param m A boolean flag indicating whether to log the operation or not.
+     * @return The slot on top of the subtree after deleting the member.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private int deleteMember(float number,int node,Writer file,boolean m) throws IOException {
+        if(node == NIL){
+            return NIL;
+        }
+        if(number > gms[node]){
+            right[node] = deleteMember(number,right[node],file,m);
+        }
+        else if(number < gms[node]){
+            left[node] = deleteMember(number,left[node],file,m);
+        }
+        else if(left[node] != NIL && right[node] != NIL){
+            // replace the member with the smallest member on its right
+            int successor = right[node];
+            while(left[successor] != NIL){
+                successor = left[successor];
+            }
+            file.write(names[node] + " left the family, replaced by " + names[successor] + "\n");
+            gms[node] = gms[successor];
+            names[node] = names[successor];
+            right[node] = deleteMember(gms[node],right[node],file,false);
+        }
+        else{
+            int child = left[node] != NIL ? left[node] : right[node];
+            if(m){
+                file.write(names[node] + " left the family, replaced by "
+                        + (child == NIL ? "nobody" : names[child]) + "\n");
+            }
+            free(node);
+            return child == NIL ? NIL : balance(child);
+        }
+        return balance(node);
+    }
+    /**
+     * Searches for a member in the family tree based on GMS and returns the height of the found member.
+     *
+     * @param name The name of the member to search for.
+     * @param number The GMS of the member to search for.
+     * @return The height of the found member, or -1 if there is no such member.
+     */
+    public int searchMember2(String name,float number){
+        int node = search(number);
+        return node == NIL ? -1 : height[node];
+    }
+    /**
+     * Searches for the slot of a member based on GMS.
+     *
+     * @param number The GMS of the member to search for.
+     * @return The slot of the member, or NIL if there is no such member.
+     */
+    public int search(float number){
+        int current = boss;
+        while(current != NIL){
+            if(number > gms[current]){
+                current = right[current];
+            }
+            else if(number < gms[current]){
+                current = left[current];
+            }
+            else{
+                return current;
+            }
+        }
+        return NIL;
+    }
+    /**
+     * Finds the rank of a member, which is the number of superiors between the boss and the member.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The rank of the member, or the length of the searched path if there is no such member.
+     */
+    public int findTheRank(String name,float number){
+        int i = 0;
+        int current = boss;
+        while(current != NIL){
+            if(number > gms[current]){
+                i++;
+                current = right[current];
+            }
+            else if(number < gms[current]){
+                i++;
+                current = left[current];
+            }
+            else{
+                return i;
+            }
+        }
+        return i;
+    }
+    /**
+     * Finds members in the family tree with the given rank and logs them in the output file.
+     *
+     * @param rank The rank to search for.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void findSameRank(int rank,Writer file) throws IOException {
+        findSameRank(boss,0,rank,file);
+    }
+    /**
+     * Recursive helper method for findSameRank.
+     *
+     * @param node The current slot being processed.
+     * @param root The rank of the current slot.
+     * @param rank The rank to search for.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private void findSameRank(int node,int root,int rank,Writer file) throws IOException {
+        // the deepest rank under the slot is root + its height, a subtree which does not reach rank is skipped
+        if(node == NIL || root > rank || root + height[node] < rank){
+            return;
+        }
+        if(root == rank){
+            file.write(" " + names[node] + " " + String.format("%.3f",gms[node]));
+            return;
+        }
+        findSameRank(left[node],root + 1,rank,file);
+        findSameRank(right[node],root + 1,rank,file);
+    }
+    /**
+     * Finds the joint parent of two members based on their GMS.
+     *
+     * @param g1 The GMS of the first member.
+     * @param g2 The GMS of the second member.
+     * @return The slot of the joint parent, or NIL if the family tree is empty.
+     */
+    public int findParent(float g1,float g2){
+        int current = boss;
+        while(current != NIL){
+            int next;
+            if(g1 > gms[current] && g2 > gms[current]){
+                next = right[current];
+            }
+            else if(g1 < gms[current] && g2 < gms[current]){
+                next = left[current];
+            }
+            else{
+                return current;
+            }
+            if(next == NIL){
+                return current;
+            }
+            current = next;
+        }
+        return NIL;
+    }
+    /**
+     * Finds the maximum number of members in the family tree such that no member is chosen together with its
+     * direct superior.
+     *
+     * @return The maximum number of independent members.
+     */
+    public int division(){
+        return boss == NIL ? 0 : Math.max(withMember[boss],withoutMember[boss]);
+    }
+    /**
+     * Returns the name of the member in a slot.
+     *
+     * @param node The slot of the member.
+     * @return The name of the member.
+     */
+    public String nameOf(int node){
+        return names[node];
+    }
+    /**
+     * Returns the GMS of the member in a slot.
+     *
+     * @param node The slot of the member.
+     * @return The GMS of the member.
+     */
+    public float gmsOf(int node){
+        return gms[node];
+    }
+    /**
+     * Returns the slot of the boss.
+     *
+     * @return The slot of the boss, or NIL if the family tree is empty.
+     */
+    public int boss(){
+        return boss;
+    }
+    /**
+     * Returns the number of members in the family tree.
+     *
+     * @return The number of members.
+     */
+    public int size(){
+        return count;
+    }
+    /**
+     * Checks if the family tree is empty.
+     *
+     * @return True if the family tree is empty, false otherwise.
+     */
+    public boolean isEmpty(){
+        return boss == NIL;
+    }
+    /**
+     * Balances the subtree of a slot with the same rotations as Intelligence.balance.
+     *
+     * @param node The slot to be balanced.
+     * @return The slot on top of the balanced subtree.
+     */
+    private int balance(int node){
+        update(node);
+        int difference = heightOf(left[node]) - heightOf(right[node]);
+        if(Math.abs(difference) <= 1){
+            return node;
+        }
+        if(difference > 1){
+            int son = left[node];
+            // left-right rotation turns into left-left after rotating the son
+            if(heightOf(left[son]) < heightOf(right[son])){
+                left[node] = rotateLeft(son);
+            }
+            return rotateRight(node);
+        }
+        int son = right[node];
+        // right-left rotation turns into right-right after rotating the son
+        if(heightOf(left[son]) > heightOf(right[son])){
+            right[node] = rotateRight(son);
+        }
+        return rotateLeft(node);
+    }
+    /**
+     * Rotates the left inferior of a slot up.
+     *
+     * @param node The slot to rotate down.
+     * @return The slot on top after the rotation.
+     */
+    private int rotateRight(int node){
+        int son = left[node];
+        left[node] = right[son];
+        right[son] = node;
+        update(node);
+        update(son);
+        return son;
+    }
+    /**
+     * Rotates the right inferior of a slot up.
+     *
+     * @param node The slot to rotate down.
+     * @return The slot on top after the rotation.
+     */
+    private int rotateLeft(int node){
+        int son = right[node];
+        right[node] = left[son];
+        left[son] = node;
+        update(node);
+        update(son);
+        return son;
+    }
+    /**
+     * Recomputes the height and the division values of a slot from its inferiors.
+     *
+     * @param node The slot to update.
+     */
+    private void update(int node){
+        int l = left[node];
+        int r = right[node];
+        height[node] = (byte) (Math.max(heightOf(l),heightOf(r)) + 1);
+        withMember[node] = 1 + (l == NIL ? 0 : withoutMember[l]) + (r == NIL ? 0 : withoutMember[r]);
+        withoutMember[node] = divisionOf(l) + divisionOf(r);
+    }
+    /**
+     * Returns the height of a slot.
+     *
+     * @param node The slot.
+     * @return The height of the slot, or -1 for NIL.
+     */
+    private int heightOf(int node){
+        return node == NIL ? -1 : height[node];
+    }
+    /**
+     * Returns the maximum number of independent members in the subtree of a slot.
+     *
+     * @param node The slot.
+     * @return The maximum number of independent members, or 0 for NIL.
+     */
+    private int divisionOf(int node){
+        return node == NIL ? 0 : Math.max(withMember[node],withoutMember[node]);
+    }
+    /**
+     * Takes a free slot, or a new one, for a new member.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The slot of the member.
+     */
+    private int allocate(String name,float number){
+        int node;
+        if(freeSlot != NIL){
+            node = freeSlot;
+            freeSlot = left[node];
+        }
+        else{
+            if(used == gms.length){
+                grow();
+            }
+            node = used++;
+        }
+        gms[node] = number;
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 0;
+        withMember[node] = 1;
+        withoutMember[node] = 0;
+        names[node] = name;
+        count++;
+        return node;
+    }
+    /**
+     * Puts a slot on the free list.
+     *
+     * @param node The slot of the deleted member.
+     */
+    private void free(int node){
+        // the name is not kept alive by a free slot
+        names[node] = null;
+        left[node] = freeSlot;
+        freeSlot = node;
+        count--;
+    }
+    /**
+     * Grows the member arrays by half of their capacity.
+     */
+    private void grow(){
+        resize(gms.length + Math.max(gms.length >> 1,1));
+    }
+    /**
+     * Moves the members into arrays of exactly their number, giving back every free slot.
+     */
+    public void trimToSize(){
+        compact(Math.max(count,1));
+    }
+    /**
+     * Moves the members to the first slots of new arrays in pre-order, so the free slots are dropped.
+     *
+     * @param capacity The new capacity, at least the number of members.
+     */
+    private void compact(int capacity){
+        float[] oldGms = gms;
+        int[] oldLeft = left;
+        int[] oldRight = right;
+        byte[] oldHeight = height;
+        int[] oldWithMember = withMember;
+        int[] oldWithoutMember = withoutMember;
+        String[] oldNames = names;
+        gms = new float[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new byte[capacity];
+        withMember = new int[capacity];
+        withoutMember = new int[capacity];
+        names = new String[capacity];
+        used = 0;
+        boss = move(boss,oldGms,oldLeft,oldRight,oldHeight,oldWithMember,oldWithoutMember,oldNames);
+        freeSlot = NIL;
+    }
+    /**
+     * Moves a subtree from the old arrays to the next slots of the new ones.
+     *
+     * @param node The slot of the subtree in the old arrays.
+     * @param oldGms The old GMS array.
+     * @param oldLeft The old left inferior array.
+     * @param oldRight The old right inferior array.
+     * @param oldHeight The old height array.
+     * @param oldWithMember The old division values with the member chosen.
+     * @param oldWithoutMember The old division values without the member chosen.
+     * @param oldNames The old name array.
+     * @return The slot of the subtree in the new arrays.
+     */
+    private int move(int node,float[] oldGms,int[] oldLeft,int[] oldRight,byte[] oldHeight,int[] oldWithMember,
+                     int[] oldWithoutMember,String[] oldNames){
+        if(node == NIL){
+            return NIL;
+        }
+        int moved = used++;
+        gms[moved] = oldGms[node];
+        height[moved] = oldHeight[node];
+        withMember[moved] = oldWithMember[node];
+        withoutMember[moved] = oldWithoutMember[node];
+        names[moved] = oldNames[node];
+        left[moved] = move(oldLeft[node],oldGms,oldLeft,oldRight,oldHeight,oldWithMember,oldWithoutMember,oldNames);
+        right[moved] = move(oldRight[node],oldGms,oldLeft,oldRight,oldHeight,oldWithMember,oldWithoutMember,oldNames);
+        return moved;
+    }
+    /**
+     * Copies the member arrays to a new capacity.
+     *
+     * @param capacity The new capacity, more than the number of slots used so far.
+     */
+    private void resize(int capacity){
+        gms = Arrays.copyOf(gms,capacity);
+        left = Arrays.copyOf(left,capacity);
+        right = Arrays.copyOf(right,capacity);
+        height = Arrays.copyOf(height,capacity);
+        withMember = Arrays.copyOf(withMember,capacity);
+        withoutMember = Arrays.copyOf(withoutMember,capacity);
+        names = Arrays.copyOf(names,capacity);
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+/**
+ * The BatchExecutor class runs a command file against the family tree like the loop in Intelligence.main, but
+ * answers the read-only commands in parallel. The commands are read in runs: a run of INTEL_TARGET, INTEL_RANK and
+ * INTEL_DIVIDE commands is collected until the next MEMBER_IN or MEMBER_OUT, the queries of the run are answered
+ * together on a fork-join pool while the tree does not change, and their result lines are written in input order.
+ * The mutations are applied one at a time as before, so the output file is byte for byte the same.
+ */
+public class BatchExecutor {
+    // most queries collected before a run is answered, so long runs do not hold all their lines in memory
+    public static final int DEFAULT_MAX_RUN = 1 << 16;
+    // runs shorter than this are answered on the calling thread
+    private static final int PARALLEL_THRESHOLD = 64;
+    // family tree the commands are applied to
+    private final Intelligence family;
+    // pool the queries of a run are answered on
+    private final ForkJoinPool pool;
+    // opcodes of the collected queries
+    private final int[] opcodes;
+    // names and GMS values of the members of the collected queries, the second member only for INTEL_TARGET
+    private final String[] firstNames;
+    private final float[] firstNumbers;
+    private final String[] secondNames;
+    private final float[] secondNumbers;
+    // result lines of the collected queries
+    private final String[] results;
+    // number of collected queries
+    private int count;
+    /**
+     * Creates an executor with runs of at most DEFAULT_MAX_RUN queries.
+     *
+     * @param family The family tree the commands are applied to.
+     * @param pool The pool the queries are answered on.
+     */
+    public BatchExecutor(Intelligence family,ForkJoinPool pool){
+        this(family,pool,DEFAULT_MAX_RUN);
+    }
+    /**
+     * Creates an executor.
+     *
+     * @param family The family tree the commands are applied to.
+     * @param pool The pool the queries are answered on.
+     * @param maxRun The most queries answered together.
+     */
+    public BatchExecutor(Intelligence family,ForkJoinPool pool,int maxRun){
+        if(maxRun <= 0){
+            throw new IllegalArgumentException("maxRun must be positive: " + maxRun);
+        }
+        this.family = family;
+        this.pool = pool;
+        opcodes = new int[maxRun];
+        firstNames = new String[maxRun];
+        firstNumbers = new float[maxRun];
+        secondNames = new String[maxRun];
+        secondNumbers = new float[maxRun];
+        results = new String[maxRun];
+    }
+    /**
+     * Reads the remaining commands of a command file and applies them, writing the log to the output file.
+     *
+     * @param reader The command file, positioned after the boss line.
+     * @param file The Writer object to log the operations.
+     * @throws IOException If an I/O error occurs while reading the commands or writing to the file.
+     */
+    public void execute(CommandReader reader,Writer file) throws IOException {
+        FamilyListener log = new FamilyLogFormatter(file);
+        int operation;
+        while((operation = reader.nextOpcode()) != CommandReader.END){
+            if(operation == CommandReader.MEMBER_IN || operation == CommandReader.MEMBER_OUT){
+                // the queries before the mutation see the tree as it is now
+                answerRun(file);
+                long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                String memberName = reader.nextName();
+                float memberGMS = reader.nextFloat();
+                if(operation == CommandReader.MEMBER_IN){
+                    family.addNewMember(memberName,memberGMS,log);
+                }
+                else{
+                    family.deleteMember(memberName,memberGMS,log);
+                }
+                if(Metrics.ENABLED){
+                    Metrics.command(operation,System.nanoTime() - start);
+                }
+            }
+            else if(operation == CommandReader.INTEL_TARGET){
+                opcodes[count] = operation;
+                firstNames[count] = reader.nextName();
+                firstNumbers[count] = reader.nextFloat();
+                secondNames[count] = reader.nextName();
+                secondNumbers[count] = reader.nextFloat();
+                collected(file);
+            }
+            else if(operation == CommandReader.INTEL_RANK){
+                opcodes[count] = operation;
+                firstNames[count] = reader.nextName();
+                firstNumbers[count] = reader.nextFloat();
+                collected(file);
+            }
+            else if(operation == CommandReader.INTEL_DIVIDE){
+                opcodes[count] = operation;
+                collected(file);
+            }
+        }
+        answerRun(file);
+    }
+    /**
+     * Counts a collected query and answers the run if it is full.
+     *
+     * @param file The Writer object to log the results.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private void collected(Writer file) throws IOException {
+        count++;
+        if(count == opcodes.length){
+            answerRun(file);
+        }
+    }
+    /**
+     * Answers the collected queries and writes their result lines in the order they were read.
+     *
+     * @param file The Writer object to log the results.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private void answerRun(Writer file) throws IOException {
+        if(count == 0){
+            return;
+        }
+        int n = count;
+        if(n < PARALLEL_THRESHOLD){
+            for(int i = 0;i < n;i++){
+                results[i] = answer(i);
+            }
+        }
+        else{
+            // each query writes only its own slot, and the tree is not changed until the run is over
+            pool.submit(() -> IntStream.range(0,n).parallel().forEach(i -> results[i] = answer(i))).join();
+        }
+        for(int i = 0;i < n;i++){
+            file.write(results[i]);
+            results[i] = null;
+            firstNames[i] = null;
+            secondNames[i] = null;
+        }
+        count = 0;
+    }
+    /**
+     * Answers one collected query and counts its latency. Queries answered together overlap, so each one is timed
+     * on its own thread, from the start of its answer to its result line; writing the line is not included.
+     *
+     * @param i The position of the query in the run.
+     * @return The result line of the query.
+     */
+    private String answer(int i){
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        String line = query(i);
+        if(Metrics.ENABLED){
+            Metrics.command(opcodes[i],System.nanoTime() - start);
+        }
+        return line;
+    }
+    /**
+     * Computes the result line of one collected query.
+     *
+     * @param i The position of the query in the run.
+     * @return The result line of the query.
+     */
+    private String query(int i){
+        if(opcodes[i] == CommandReader.INTEL_TARGET){
+            return Intelligence.targetAnalysis(firstNames[i],firstNumbers[i],secondNames[i],secondNumbers[i]);
+        }
+        else if(opcodes[i] == CommandReader.INTEL_RANK){
+            return Intelligence.rankAnalysis(firstNames[i],firstNumbers[i]);
+        }
+        return Intelligence.divisionAnalysis();
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+/**
+ * The ChannelWriter class is an output sink for the family log that collects the written text in one large,
+ * reusable buffer and hands it to a FileChannel only when the buffer is full, when flush is called, or when the
+ * writer is closed. It can either write through a direct ByteBuffer or encode straight into memory-mapped regions
+ * of the output file.
+ */
+public class ChannelWriter extends Writer {
+    // default number of characters collected before they are encoded
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    // size of one mapped region of the output file in memory-mapped mode
+    private static final long MAPPED_REGION_SIZE = 64L << 20;
+    // channel of the output file
+    private final FileChannel channel;
+    // encoder of the default charset, replacing unmappable chars the same way FileWriter does
+    private final CharsetEncoder encoder;
+    // characters written since the last encoding
+    private final CharBuffer chars;
+    // encoded bytes, a direct buffer or the current mapped region
+    private ByteBuffer bytes;
+    // true if the output file is written through mapped regions
+    private final boolean mapped;
+    // file position of the current mapped region
+    private long regionStart;
+    // true if the writer is closed
+    private boolean closed;
+    /**
+     * Opens the output file with a direct buffer of the default size.
+     *
+     * @param path The path of the output file.
+     * @throws IOException If the file can not be opened.
+     */
+    public ChannelWriter(Path path) throws IOException {
+        this(path,DEFAULT_BUFFER_SIZE,false);
+    }
+    /**
+     * Opens the output file, truncating it if it already exists.
+     *
+     * @param path The path of the output file.
+     * @param bufferSize The number of characters collected before they are encoded and written.
+     * @param mapped True to write the file through memory-mapped regions instead of a direct buffer.
+     * @throws IOException If the file can not be opened.
+     */
+    public ChannelWriter(Path path,int bufferSize,boolean mapped) throws IOException {
+        if(bufferSize <= 0){
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.mapped = mapped;
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // room for at least a surrogate pair, which can not be encoded half
+        this.chars = CharBuffer.allocate(Math.max(bufferSize,2));
+        if(mapped){
+            channel = FileChannel.open(path,StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ,StandardOpenOption.WRITE);
+            bytes = mapRegion();
+        }
+        else{
+            channel = FileChannel.open(path,StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            bytes = ByteBuffer.allocateDirect((int) Math.ceil(bufferSize * encoder.maxBytesPerChar()));
+        }
+    }
+    @Override
+    public void write(char[] cbuf,int off,int len) throws IOException {
+        ensureOpen();
+        while(len > 0){
+            int n = Math.min(len,chars.remaining());
+            chars.put(cbuf,off,n);
+            off += n;
+            len -= n;
+            if(!chars.hasRemaining()){
+                encodeChars(false);
+            }
+        }
+    }
+    @Override
+    public void write(String str,int off,int len) throws IOException {
+        ensureOpen();
+        // put the string directly, so no temporary char array is created
+        while(len > 0){
+            int n = Math.min(len,chars.remaining());
+            chars.put(str,off,off + n);
+            off += n;
+            len -= n;
+            if(!chars.hasRemaining()){
+                encodeChars(false);
+            }
+        }
+    }
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        chars.put((char) c);
+        if(!chars.hasRemaining()){
+            encodeChars(false);
+        }
+    }
+    /**
+     * Encodes the buffered characters and hands the bytes to the channel.
+     *
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if(Metrics.ENABLED){
+            Metrics.outputFlush();
+        }
+        encodeChars(false);
+        if(!mapped){
+            drainBytes();
+        }
+    }
+    /**
+     * Writes everything that is still buffered and closes the file. In memory-mapped mode the file is cut to the
+     * number of bytes actually written.
+     *
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        try{
+            encodeChars(true);
+            while(encoder.flush(bytes).isOverflow()){
+                drainBytes();
+            }
+            if(mapped){
+                if(Metrics.ENABLED){
+                    Metrics.outputWrite(bytes.position());
+                }
+                channel.truncate(regionStart + bytes.position());
+            }
+            else{
+                drainBytes();
+            }
+        }
+        finally{
+            closed = true;
+            channel.close();
+        }
+    }
+    /**
+     * Encodes the characters in the buffer into the byte buffer, draining the byte buffer whenever it is full.
+     *
+     * @param endOfInput True if no more characters will follow.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private void encodeChars(boolean endOfInput) throws IOException {
+        chars.flip();
+        while(true){
+            CoderResult result = encoder.encode(chars,bytes,endOfInput);
+            if(result.isOverflow()){
+                drainBytes();
+            }
+            else if(result.isUnderflow()){
+                break;
+            }
+            else{
+                result.throwException();
+            }
+        }
+        // a half written surrogate pair stays in the buffer until its second char comes
+        chars.compact();
+    }
+    /**
+     * Writes the encoded bytes to the channel, or moves on to the next mapped region in memory-mapped mode.
+     *
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private void drainBytes() throws IOException {
+        if(Metrics.ENABLED){
+            Metrics.outputWrite(bytes.position());
+        }
+        if(mapped){
+            regionStart += bytes.position();
+            bytes = mapRegion();
+            return;
+        }
+        bytes.flip();
+        while(bytes.hasRemaining()){
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+    /**
+     * Maps the next region of the output file starting at the current region start.
+     *
+     * @return The mapped region.
+     * @throws IOException If the region can not be mapped.
+     */
+    private MappedByteBuffer mapRegion() throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE,regionStart,MAPPED_REGION_SIZE);
+    }
+    /**
+     * Checks that the writer is not closed.
+     *
+     * @throws IOException If the writer is closed.
+     */
+    private void ensureOpen() throws IOException {
+        if(closed){
+            throw new IOException("Writer is closed");
+        }
+    }
+}
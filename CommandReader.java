@@ -0,0 +1,239 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+/**
+ * The CommandReader class reads the command file of the family tree as a stream of whitespace separated tokens.
+ * It reads the file through a direct buffer or memory-mapped regions of a FileChannel, matches the operation
+ * names byte by byte and parses the GMS values without creating strings, so it gives the same tokens as
+ * java.util.Scanner without its regular expressions.
+ */
+public class CommandReader implements Closeable {
+    // returned by nextOpcode when there are no more tokens
+    public static final int END = -1;
+    // returned by nextOpcode for a token which is not an operation name
+    public static final int UNKNOWN = 0;
+    public static final int MEMBER_IN = 1;
+    public static final int MEMBER_OUT = 2;
+    public static final int INTEL_TARGET = 3;
+    public static final int INTEL_RANK = 4;
+    public static final int INTEL_DIVIDE = 5;
+    // operation names, indexed by their opcode
+    private static final byte[][] OPERATIONS = {
+            null,
+            "MEMBER_IN".getBytes(),
+            "MEMBER_OUT".getBytes(),
+            "INTEL_TARGET".getBytes(),
+            "INTEL_RANK".getBytes(),
+            "INTEL_DIVIDE".getBytes()
+    };
+    // powers of ten which are exact floats
+    private static final float[] POWERS_OF_TEN = {1e0f,1e1f,1e2f,1e3f,1e4f,1e5f,1e6f,1e7f,1e8f,1e9f,1e10f};
+    // size of the direct read buffer
+    private static final int BUFFER_SIZE = 1 << 16;
+    // size of one mapped region of the input file in memory-mapped mode
+    private static final long MAPPED_REGION_SIZE = 256L << 20;
+    // channel of the input file
+    private final FileChannel channel;
+    // charset the names are decoded with, the same one Scanner uses for a file
+    private final Charset charset = Charset.defaultCharset();
+    // true if the input file is read through mapped regions
+    private final boolean mapped;
+    // bytes of the file which are not read yet
+    private ByteBuffer buffer;
+    // file position right after the current mapped region
+    private long regionEnd;
+    // bytes of the current token, reused for every token
+    private byte[] token = new byte[64];
+    // length of the current token
+    private int tokenLength;
+    /**
+     * Opens the command file.
+     *
+     * @param path The path of the command file.
+     * @param mapped True to read the file through memory-mapped regions instead of a direct buffer.
+     * @throws IOException If the file can not be opened.
+     */
+    public CommandReader(Path path,boolean mapped) throws IOException {
+        this.channel = FileChannel.open(path,StandardOpenOption.READ);
+        this.mapped = mapped;
+        if(mapped){
+            buffer = ByteBuffer.allocate(0);
+        }
+        else{
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.flip();
+        }
+    }
+    /**
+     * Reads the next token and returns which operation it names.
+     *
+     * @return The opcode of the operation, UNKNOWN if the token is not an operation, or END if the file is over.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    public int nextOpcode() throws IOException {
+        if(!readToken()){
+            return END;
+        }
+        for(int opcode = MEMBER_IN;opcode < OPERATIONS.length;opcode++){
+            byte[] operation = OPERATIONS[opcode];
+            if(Arrays.equals(token,0,tokenLength,operation,0,operation.length)){
+                return opcode;
+            }
+        }
+        return UNKNOWN;
+    }
+    /**
+     * Reads the next token as the name of a member.
+     *
+     * @return The name of the member.
+     * @throws IOException If an I/O error occurs while reading the file.
+     * @throws NoSuchElementException If the file is over.
+     */
+    public String nextName() throws IOException {
+        if(!readToken()){
+            throw new NoSuchElementException();
+        }
+        return new String(token,0,tokenLength,charset);
+    }
+    /**
+     * Reads the next token as a GMS. Plain decimal numbers with at most seven significant digits and ten
+     * fraction digits are computed with a single float division, which rounds exactly like Float.parseFloat;
+     * any other number is handed to Float.parseFloat.
+     *
+     * @return The GMS value.
+     * @throws IOException If an I/O error occurs while reading the file.
+     * @throws NoSuchElementException If the file is over.
+     * @throws InputMismatchException If the token is not a number.
+     */
+    public float nextFloat() throws IOException {
+        if(!readToken()){
+            throw new NoSuchElementException();
+        }
+        int i = 0;
+        boolean negative = false;
+        if(token[0] == '-' || token[0] == '+'){
+            negative = token[0] == '-';
+            i++;
+        }
+        int mantissa = 0;
+        int fractionDigits = 0;
+        int digits = 0;
+        boolean point = false;
+        for(;i < tokenLength;i++){
+            int b = token[i];
+            if(b >= '0' && b <= '9'){
+                // more than 2^24 can not be held exactly by a float
+                if(mantissa >= (1 << 24) / 10){
+                    return parseSlow();
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if(point){
+                    fractionDigits++;
+                }
+            }
+            else if(b == '.' && !point){
+                point = true;
+            }
+            else{
+                return parseSlow();
+            }
+        }
+        if(digits == 0 || fractionDigits >= POWERS_OF_TEN.length){
+            return parseSlow();
+        }
+        float value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+    /**
+     * Parses the current token with Float.parseFloat.
+     *
+     * @return The GMS value.
+     * @throws InputMismatchException If the token is not a number.
+     */
+    private float parseSlow(){
+        String text = new String(token,0,tokenLength,charset);
+        try{
+            return Float.parseFloat(text);
+        }
+        catch(NumberFormatException e){
+            throw new InputMismatchException(text);
+        }
+    }
+    /**
+     * Skips the whitespace and copies the next token into the token buffer.
+     *
+     * @return True if a token is read, false if the file is over.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    private boolean readToken() throws IOException {
+        // skip the whitespace before the token
+        while(true){
+            if(!buffer.hasRemaining() && !refill()){
+                return false;
+            }
+            if(!isWhitespace(buffer.get(buffer.position()))){
+                break;
+            }
+            buffer.position(buffer.position() + 1);
+        }
+        tokenLength = 0;
+        while(buffer.hasRemaining() || refill()){
+            byte b = buffer.get(buffer.position());
+            if(isWhitespace(b)){
+                break;
+            }
+            buffer.position(buffer.position() + 1);
+            if(tokenLength == token.length){
+                token = Arrays.copyOf(token,token.length * 2);
+            }
+            token[tokenLength++] = b;
+        }
+        return true;
+    }
+    /**
+     * Loads the next part of the file into the buffer.
+     *
+     * @return True if there are new bytes in the buffer, false if the file is over.
+     * @throws IOException If an I/O error occurs while reading the file.
+     */
+    private boolean refill() throws IOException {
+        if(mapped){
+            long size = channel.size();
+            if(regionEnd >= size){
+                return false;
+            }
+            long length = Math.min(MAPPED_REGION_SIZE,size - regionEnd);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY,regionEnd,length);
+            regionEnd += length;
+            return true;
+        }
+        buffer.clear();
+        int n;
+        do{
+            n = channel.read(buffer);
+        }while(n == 0);
+        buffer.flip();
+        return n > 0;
+    }
+    /**
+     * Checks if a byte is a whitespace character for java.util.Scanner's default delimiter.
+     *
+     * @param b The byte to check.
+     * @return True if the byte is whitespace.
+     */
+    private static boolean isWhitespace(byte b){
+        return b == ' ' || (b >= 0x09 && b <= 0x0D) || (b >= 0x1C && b <= 0x1F);
+    }
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,485 @@
+import java.io.IOException;
+import java.io.Writer;
+/**
+ * The ConcurrentIntelligence class is a family tree which can be shared between threads. Its nodes never change:
+ * adding or deleting a member copies the nodes on the path from the boss to the member and publishes the new boss
+ * through a volatile field, while the untouched subtrees are shared with the old tree. Readers take the current
+ * boss once and run on that tree without any locks, and writers are serialized on the object's monitor.
+ * Since old trees stay valid, snapshot gives a handle on any version for point-in-time queries.
+ *
+ * Unlike Intelligence, a node holds one member and there are no tied members, so adding a member with a GMS which
+ * is already in the family is refused with an IllegalArgumentException instead of changing the results.
+ */
+public class ConcurrentIntelligence {
+    /**
+     * Represents an unchangeable node in the family tree with a name and GMS (Genetic Match Score).
+     */
+    public static final class Node {
+        // GMS of the Member
+        public final float GMS;
+        // Name of the member
+        public final String name;
+        // left inferior of member
+        public final Node leftMember;
+        // right inferior of member
+        public final Node rightMember;
+        // rank of member
+        public final int height;
+        // maximum number of independent members in the subtree of member, when member is chosen
+        public final int withMember;
+        // maximum number of independent members in the subtree of member, when member is not chosen
+        public final int withoutMember;
+        /**
+         * Constructs a new Node and computes its height and division values from its inferiors.
+         *
+         * @param name The name of the member.
+         * @param GMS The GMS of the member.
+         * @param leftMember The left inferior of the member.
+         * @param rightMember The right inferior of the member.
+         */
+        Node(String name,float GMS,Node leftMember,Node rightMember){
+            this.name = name;
+            this.GMS = GMS;
+            this.leftMember = leftMember;
+            this.rightMember = rightMember;
+            this.height = Math.max(findtheHeight(leftMember),findtheHeight(rightMember)) + 1;
+            this.withMember = 1 + withoutMember(leftMember) + withoutMember(rightMember);
+            this.withoutMember = division(leftMember) + division(rightMember);
+        }
+    }
+
+    /**
+     * An unchangeable view of the family tree as it was at one moment. It keeps answering queries about that
+     * version while the family goes on changing, and it costs nothing to take because the tree is never copied.
+     */
+    public static final class Snapshot {
+        // root node of the family tree of this version
+        private final Node boss;
+        // number of changes made to the family before this version
+        private final long version;
+        /**
+         * Constructs a snapshot of a version of the family tree.
+         *
+         * @param boss The root node of the version.
+         * @param version The number of changes made before the version.
+         */
+        Snapshot(Node boss,long version){
+            this.boss = boss;
+            this.version = version;
+        }
+        /**
+         * Returns the root node of this version.
+         *
+         * @return The root node, or null if the family tree was empty.
+         */
+        public Node boss(){
+            return boss;
+        }
+        /**
+         * Returns the number of changes made to the family before this version.
+         *
+         * @return The version number.
+         */
+        public long version(){
+            return version;
+        }
+        /**
+         * Searches for a member based on GMS and returns the height of the found node.
+         *
+         * @param name The name of the member to search for.
+         * @param number The GMS of the member to search for.
+         * @return The height of the found node, or -1 if there is no such member.
+         */
+        public int searchMember2(String name,float number){
+            return findtheHeight(search(number,boss));
+        }
+        /**
+         * Finds the rank of a member in this version.
+         *
+         * @param name The name of the member.
+         * @param number The GMS of the member.
+         * @return The rank of the member, or the length of the searched path if there is no such member.
+         */
+        public int findTheRank(String name,float number){
+            return ConcurrentIntelligence.findTheRank(number,boss);
+        }
+        /**
+         * Finds the members with the same rank as the given member in this version and logs them in the output
+         * file.
+         *
+         * @param name The name of the member.
+         * @param number The GMS of the member.
+         * @param file The Writer object to log the result.
+         * @throws IOException If an I/O error occurs while writing to the file.
+         */
+        public void findSameRank(String name,float number,Writer file) throws IOException {
+            ConcurrentIntelligence.findSameRank(boss,0,ConcurrentIntelligence.findTheRank(number,boss),file);
+        }
+        /**
+         * Finds the joint parent node of two members in this version.
+         *
+         * @param n1 The name of the first member.
+         * @param g1 The GMS of the first member.
+         * @param n2 The name of the second member.
+         * @param g2 The GMS of the second member.
+         * @return The joint parent node, or null if the family tree was empty.
+         */
+        public Node findParent(String n1,float g1,String n2,float g2){
+            return ConcurrentIntelligence.findParent(g1,g2,boss);
+        }
+        /**
+         * Finds the maximum number of independent members in this version.
+         *
+         * @return The maximum number of independent members.
+         */
+        public int division(){
+            return ConcurrentIntelligence.division(boss);
+        }
+        /**
+         * Checks if the family tree was empty in this version.
+         *
+         * @return True if the family tree was empty, false otherwise.
+         */
+        public boolean isEmpty(){
+            return boss == null;
+        }
+    }
+
+    /**
+     * The current version of the family tree.
+     */
+    private volatile Snapshot current = new Snapshot(null,0);
+    /**
+     * Returns the root node of the current family tree. The returned tree never changes.
+     *
+     * @return The root node, or null if the family tree is empty.
+     */
+    public Node boss(){
+        return current.boss;
+    }
+    /**
+     * Returns the current version of the family tree. The snapshot stays valid and unchanged whatever is added or
+     * deleted later; each change keeps only the nodes on its path as extra memory.
+     *
+     * @return The snapshot of the current version.
+     */
+    public Snapshot snapshot(){
+        return current;
+    }
+    /**
+     * Adds a new member to the family tree.
+     *
+     * @param name The name of the added member
+     * @param number The GMS of the added member
+     * @param file The Writer object to log the operation.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     * @throws IllegalArgumentException If a member with the GMS is already in the family.
+     */
+    public synchronized void addNewMember(String name,float number,Writer file) throws IOException {
+        // a node holds one member, so a tie is refused before anything is logged
+        if(search(number,current.boss) != null){
+            throw new IllegalArgumentException("A member with GMS " + number + " is already in the family");
+        }
+        publish(addNewMember(name,number,current.boss,file));
+    }
+    /**
+     * Deletes a member from the family tree.
+     *
+     * @param name The name of the member to be deleted.
+     * @param number The GMS of the member to be deleted.
+     * @param file The Writer object to log the operation.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public synchronized void deleteMember(String name,float number,Writer file) throws IOException {
+        publish(deleteMember(number,current.boss,file,true));
+    }
+    /**
+     * Makes a new family tree the current version.
+     *
+     * @param boss The root node of the new family tree.
+     */
+    private void publish(Node boss){
+        Snapshot last = current;
+        if(boss != last.boss){
+            current = new Snapshot(boss,last.version + 1);
+        }
+    }
+    /**
+     * Searches for a member based on GMS and returns the height of the found node.
+     *
+     * @param name The name of the member to search for.
+     * @param number The GMS of the member to search for.
+     * @return The height of the found node, or -1 if there is no such member.
+     */
+    public int searchMember2(String name,float number){
+        return current.searchMember2(name,number);
+    }
+    /**
+     * Finds the rank of a member, which is the number of superiors between the boss and the member.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The rank of the member, or the length of the searched path if there is no such member.
+     */
+    public int findTheRank(String name,float number){
+        return current.findTheRank(name,number);
+    }
+    /**
+     * Finds the members with the same rank as the given member and logs them in the output file. Both the rank
+     * and the members are taken from the same tree, even if a writer changes the family meanwhile.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void findSameRank(String name,float number,Writer file) throws IOException {
+        current.findSameRank(name,number,file);
+    }
+    /**
+     * Finds the joint parent node of two members based on their GMS.
+     *
+     * @param n1 The name of the first member.
+     * @param g1 The GMS of the first member.
+     * @param n2 The name of the second member.
+     * @param g2 The GMS of the second member.
+     * @return The joint parent node, or null if the family tree is empty.
+     */
+    public Node findParent(String n1,float g1,String n2,float g2){
+        return current.findParent(n1,g1,n2,g2);
+    }
+    /**
+     * Finds the maximum number of members in the family tree such that no member is chosen together with its
+     * direct superior.
+     *
+     * @return The maximum number of independent members.
+     */
+    public int division(){
+        return current.division();
+    }
+    /**
+     * Checks if the family tree is empty.
+     *
+     * @return True if the family tree is empty, false otherwise.
+     */
+    public boolean isEmpty(){
+        return current.boss == null;
+    }
+    /**
+     * Recursive helper method to add a new member, copying the nodes on its path.
+     *
+     * @param name The name of the member to be added.
+     * @param number The GMS of the member to be added.
+     * @param t The current node being processed.
+     * @param file The Writer object to log the operation.
+     * @return The root node of the new subtree.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private static Node addNewMember(String name,float number,Node t,Writer file) throws IOException {
+        if(t == null){
+            return new Node(name,number,null,null);
+        }
+        if(number > t.GMS){
+            file.write(t.name + " welcomed " + name + "\n");
+            return balance(t.name,t.GMS,t.leftMember,addNewMember(name,number,t.rightMember,file));
+        }
+        else if(number < t.GMS){
+            file.write(t.name + " welcomed " + name + "\n");
+            return balance(t.name,t.GMS,addNewMember(name,number,t.leftMember,file),t.rightMember);
+        }
+        // ties are refused before the descent, so this is not reached
+        return t;
+    }
+    /**
+     * Recursive helper method to delete a member, copying the nodes on its path.
+     *
+     * @param number The GMS of the member to be deleted.
+     * @param t The current node being processed.
+     * @param file The Writer object to log the operation.
+     * @param m A boolean flag indicating whether to log the operation or not.
+     * @return The root node of the new subtree.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private static Node deleteMember(float number,Node t,Writer file,boolean m) throws IOException {
+        if(t == null){
+            return null;
+        }
+        if(number > t.GMS){
+            Node right = deleteMember(number,t.rightMember,file,m);
+            return right == t.rightMember ? t : balance(t.name,t.GMS,t.leftMember,right);
+        }
+        if(number < t.GMS){
+            Node left = deleteMember(number,t.leftMember,file,m);
+            return left == t.leftMember ? t : balance(t.name,t.GMS,left,t.rightMember);
+        }
+        if(t.leftMember != null && t.rightMember != null){
+            // replace the member with the smallest member on its right
+            Node successor = t.rightMember;
+            while(successor.leftMember != null){
+                successor = successor.leftMember;
+            }
+            file.write(t.name + " left the family, replaced by " + successor.name + "\n");
+            return balance(successor.name,successor.GMS,t.leftMember,
+                    deleteMember(successor.GMS,t.rightMember,file,false));
+        }
+        Node child = t.leftMember != null ? t.leftMember : t.rightMember;
+        if(m){
+            file.write(t.name + " left the family, replaced by " + (child == null ? "nobody" : child.name) + "\n");
+        }
+        return child;
+    }
+    /**
+     * Creates a balanced node from a member and its inferiors with the same rotations as Intelligence.balance.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @param left The left inferior.
+     * @param right The right inferior.
+     * @return The root node of the balanced subtree.
+     */
+    static Node balance(String name,float number,Node left,Node right){
+        int difference = findtheHeight(left) - findtheHeight(right);
+        if(difference > 1){
+            // left-right rotation turns into left-left after rotating the son
+            if(findtheHeight(left.leftMember) < findtheHeight(left.rightMember)){
+                Node child = left.rightMember;
+                left = new Node(child.name,child.GMS,
+                        new Node(left.name,left.GMS,left.leftMember,child.leftMember),child.rightMember);
+            }
+            return new Node(left.name,left.GMS,left.leftMember,new Node(name,number,left.rightMember,right));
+        }
+        if(difference < -1){
+            // right-left rotation turns into right-right after rotating the son
+            if(findtheHeight(right.leftMember) > findtheHeight(right.rightMember)){
+                Node child = right.leftMember;
+                right = new Node(child.name,child.GMS,child.leftMember,
+                        new Node(right.name,right.GMS,child.rightMember,right.rightMember));
+            }
+            return new Node(right.name,right.GMS,new Node(name,number,left,right.leftMember),right.rightMember);
+        }
+        return new Node(name,number,left,right);
+    }
+    /**
+     * Searches for the node of a member based on GMS.
+     *
+     * @param number The GMS of the member.
+     * @param t The root node of the family tree.
+     * @return The node of the member, or null if there is no such member.
+     */
+    static Node search(float number,Node t){
+        Node current = t;
+        while(current != null){
+            if(number > current.GMS){
+                current = current.rightMember;
+            }
+            else if(number < current.GMS){
+                current = current.leftMember;
+            }
+            else{
+                return current;
+            }
+        }
+        return null;
+    }
+    /**
+     * Finds the rank of a member in a family tree.
+     *
+     * @param number The GMS of the member.
+     * @param t The root node of the family tree.
+     * @return The rank of the member, or the length of the searched path if there is no such member.
+     */
+    static int findTheRank(float number,Node t){
+        int i = 0;
+        Node current = t;
+        while(current != null){
+            if(number > current.GMS){
+                i++;
+                current = current.rightMember;
+            }
+            else if(number < current.GMS){
+                i++;
+                current = current.leftMember;
+            }
+            else{
+                return i;
+            }
+        }
+        return i;
+    }
+    /**
+     * Logs the members of a family tree with the given rank.
+     *
+     * @param t The current node being processed.
+     * @param root The rank of the current node.
+     * @param rank The rank to search for.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    static void findSameRank(Node t,int root,int rank,Writer file) throws IOException {
+        // the deepest rank under t is root + t.height, a subtree which does not reach rank is skipped
+        if(t == null || root > rank || root + t.height < rank){
+            return;
+        }
+        if(root == rank){
+            file.write(" " + t.name + " " + String.format("%.3f",t.GMS));
+            return;
+        }
+        findSameRank(t.leftMember,root + 1,rank,file);
+        findSameRank(t.rightMember,root + 1,rank,file);
+    }
+    /**
+     * Finds the joint parent of two members in a family tree.
+     *
+     * @param g1 The GMS of the first member.
+     * @param g2 The GMS of the second member.
+     * @param t The root node of the family tree.
+     * @return The joint parent node, or null if the family tree is empty.
+     */
+    static Node findParent(float g1,float g2,Node t){
+        Node current = t;
+        while(current != null){
+            Node next;
+            if(g1 > current.GMS && g2 > current.GMS){
+                next = current.rightMember;
+            }
+            else if(g1 < current.GMS && g2 < current.GMS){
+                next = current.leftMember;
+            }
+            else{
+                return current;
+            }
+            if(next == null){
+                return current;
+            }
+            current = next;
+        }
+        return null;
+    }
+    /**
+     * Finds the height of a node.
+     *
+     * @param t The node.
+     * @return The height of the node, or -1 for null.
+     */
+    static int findtheHeight(Node t){
+        return t == null ? -1 : t.height;
+    }
+    /**
+     * Finds the maximum number of independent members in a subtree.
+     *
+     * @param t The root node of the subtree.
+     * @return The maximum number of independent members.
+     */
+    static int division(Node t){
+        return t == null ? 0 : Math.max(t.withMember,t.withoutMember);
+    }
+    /**
+     * Finds the maximum number of independent members in a subtree when its root is not chosen.
+     *
+     * @param t The root node of the subtree.
+     * @return The maximum number of independent members without the root.
+     */
+    static int withoutMember(Node t){
+        return t == null ? 0 : t.withoutMember;
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/**
+ * The DurableFamily class makes the changes to the family tree survive a crash. Every MEMBER_IN and MEMBER_OUT is
+ * appended to a WriteAheadLog before it is applied, and a checkpoint can be taken at any time: the tree is
+ * serialized in pre-order on the calling thread, which is the only one changing it, and a background thread writes
+ * the image to disk, forces it and then deletes the log segments it covers. Recovery loads the latest checkpoint and
+ * replays only the records after it, with no output log.
+ *
+ * A checkpoint is written to a temporary file and moved over the old one, so there is always one complete
+ * checkpoint on disk. It starts with the sequence number of the first log record it does not cover, followed by the
+ * tree in the TreeCodec format.
+ */
+public class DurableFamily implements Closeable {
+    // file name of the checkpoint in the directory
+    private static final String CHECKPOINT = "checkpoint.bin";
+    // first bytes of a checkpoint, "FMLY"
+    private static final int MAGIC = 0x464d4c59;
+    // version of the checkpoint layout
+    private static final int VERSION = 2;
+    // directory of the checkpoint and the log
+    private final Path directory;
+    // family tree the operations are applied to
+    private final Intelligence family;
+    // log of the operations since the last checkpoint
+    private final WriteAheadLog log;
+    // thread writing the checkpoints
+    private final ExecutorService checkpointer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable,"checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // checkpoint being written, or null
+    private Future<?> running;
+    /**
+     * Creates a durable family over a recovered tree.
+     *
+     * @param directory The directory of the checkpoint and the log.
+     * @param family The family tree.
+     * @param log The log, positioned after the last recovered record.
+     */
+    private DurableFamily(Path directory,Intelligence family,WriteAheadLog log){
+        this.directory = directory;
+        this.family = family;
+        this.log = log;
+    }
+    /**
+     * Recovers the family tree from a directory and opens it for new operations. The tree is the latest checkpoint
+     * with the log records after it applied; an empty or missing directory gives an empty tree.
+     *
+     * @param directory The directory of the checkpoint and the log.
+     * @param groupSize The number of log records written and forced together.
+     * @return The durable family.
+     * @throws IOException If the checkpoint or the log can not be read.
+     */
+    public static DurableFamily open(Path directory,int groupSize) throws IOException {
+        Intelligence family = new Intelligence();
+        Intelligence.clear();
+        long from = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if(Files.exists(checkpoint)){
+            from = readCheckpoint(checkpoint);
+        }
+        long next = WriteAheadLog.replay(directory,from,family);
+        return new DurableFamily(directory,family,new WriteAheadLog(directory,next,groupSize));
+    }
+    /**
+     * Logs and adds a new member.
+     *
+     * @param name The name of the added member.
+     * @param number The GMS of the added member.
+     * @param file The Writer object to log the operation.
+     * @throws IOException If an I/O error occurs while writing the log or the file.
+     */
+    public void addNewMember(String name,float number,Writer file) throws IOException {
+        log.append(WriteAheadLog.MEMBER_IN,name,number);
+        family.addNewMember(name,number,file);
+    }
+    /**
+     * Logs and deletes a member.
+     *
+     * @param name The name of the member to be deleted.
+     * @param number The GMS of the member to be deleted.
+     * @param file The Writer object to log the operation.
+     * @throws IOException If an I/O error occurs while writing the log or the file.
+     */
+    public void deleteMember(String name,float number,Writer file) throws IOException {
+        log.append(WriteAheadLog.MEMBER_OUT,name,number);
+        family.deleteMember(name,number,file);
+    }
+    /**
+     * Makes the operations so far durable by committing the current group of log records.
+     *
+     * @throws IOException If an I/O error occurs while writing the log.
+     */
+    public void commit() throws IOException {
+        log.commit();
+    }
+    /**
+     * Takes a checkpoint of the family tree. The tree is serialized before this method returns, so it may be changed
+     * right after; the image is written by the background thread. A checkpoint still being written is waited for
+     * first.
+     *
+     * @return The checkpoint being written, done when it is durable and the log before it is deleted.
+     * @throws IOException If the previous checkpoint failed or the log can not be rotated.
+     */
+    public Future<?> checkpoint() throws IOException {
+        awaitCheckpoint();
+        long sequence = log.rotate();
+        byte[] image = serialize(Intelligence.boss,sequence);
+        running = checkpointer.submit(() -> {
+            writeCheckpoint(image);
+            log.deleteBefore(sequence);
+            return null;
+        });
+        return running;
+    }
+    /**
+     * Waits for the checkpoint being written, commits the log and closes it.
+     *
+     * @throws IOException If the checkpoint failed or the log can not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try{
+            awaitCheckpoint();
+        }
+        finally{
+            checkpointer.shutdown();
+            log.close();
+        }
+    }
+    /**
+     * Waits for the checkpoint being written.
+     *
+     * @throws IOException If the checkpoint failed.
+     */
+    private void awaitCheckpoint() throws IOException {
+        if(running == null){
+            return;
+        }
+        try{
+            running.get();
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the checkpoint",e);
+        }
+        catch(ExecutionException e){
+            throw new IOException("Checkpoint failed",e.getCause());
+        }
+        finally{
+            running = null;
+        }
+    }
+    /**
+     * Serializes a family tree in pre-order.
+     *
+     * @param boss The root node of the family tree.
+     * @param sequence The sequence number of the first log record not covered by the image.
+     * @return The image.
+     * @throws IOException If the image can not be written.
+     */
+    private static byte[] serialize(Intelligence.Node boss,long sequence) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(sequence);
+        TreeCodec.write(boss,out);
+        return bytes.toByteArray();
+    }
+    /**
+     * Writes an image to a temporary file, forces it and moves it over the checkpoint.
+     *
+     * @param image The image.
+     * @throws IOException If the checkpoint can not be written.
+     */
+    private void writeCheckpoint(byte[] image) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary,StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.WRITE)){
+            ByteBuffer buffer = ByteBuffer.wrap(image);
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary,directory.resolve(CHECKPOINT),StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        WriteAheadLog.forceDirectory(directory);
+    }
+    /**
+     * Loads a checkpoint as the family tree.
+     *
+     * @param checkpoint The checkpoint file.
+     * @return The sequence number of the first log record not covered by the checkpoint.
+     * @throws IOException If the checkpoint can not be read or is corrupt.
+     */
+    private static long readCheckpoint(Path checkpoint) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint),1 << 16))){
+            if(in.readInt() != MAGIC || in.readInt() != VERSION){
+                throw new IOException("Not a checkpoint of a supported version: " + checkpoint);
+            }
+            long sequence = in.readLong();
+            Intelligence.restore(TreeCodec.read(in));
+            return sequence;
+        }
+    }
+}
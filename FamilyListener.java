@@ -0,0 +1,34 @@
+import java.io.IOException;
+/**
+ * The FamilyListener interface receives the events of changes to the family tree as they happen, without any text
+ * being built for them. A member is welcomed by every superior on its way down when it joins, and by the member it
+ * is tied with if it has the same GMS; a member who leaves is replaced by another member or by nobody.
+ *
+ * Both methods do nothing by default, so a listener which only counts one kind of event implements just that one.
+ * FamilyLogFormatter writes the events as the lines of the output file.
+ */
+public interface FamilyListener {
+    // listener which ignores every event
+    FamilyListener NONE = new FamilyListener(){
+    };
+    /**
+     * Called when a superior welcomes a joining member.
+     *
+     * @param ancestor The node of the welcoming superior.
+     * @param name The name of the joining member.
+     * @param number The GMS of the joining member.
+     * @throws IOException If the event can not be recorded.
+     */
+    default void welcomed(Intelligence.Node ancestor,String name,float number) throws IOException {
+    }
+    /**
+     * Called when a member leaves the family.
+     *
+     * @param name The name of the member who left.
+     * @param number The GMS of the member who left.
+     * @param replacement The name of the member who takes its place, or null for nobody.
+     * @throws IOException If the event can not be recorded.
+     */
+    default void departed(String name,float number,String replacement) throws IOException {
+    }
+}
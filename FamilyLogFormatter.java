@@ -0,0 +1,27 @@
+import java.io.IOException;
+import java.io.Writer;
+/**
+ * The FamilyLogFormatter class writes the events of the family tree as the lines of the output file:
+ * "X welcomed Y" for a welcome and "X left the family, replaced by Y" for a departure, with "nobody" when no member
+ * takes the place.
+ */
+public class FamilyLogFormatter implements FamilyListener {
+    // output the lines are written to
+    private final Writer file;
+    /**
+     * Creates a formatter writing to an output.
+     *
+     * @param file The Writer object to log the events.
+     */
+    public FamilyLogFormatter(Writer file){
+        this.file = file;
+    }
+    @Override
+    public void welcomed(Intelligence.Node ancestor,String name,float number) throws IOException {
+        file.write(ancestor.name + " welcomed " + name + "\n");
+    }
+    @Override
+    public void departed(String name,float number,String replacement) throws IOException {
+        file.write(name + " left the family, replaced by " + (replacement == null ? "nobody" : replacement) + "\n");
+    }
+}
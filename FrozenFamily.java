@@ -0,0 +1,285 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+/**
+ * The FrozenFamily class is an immutable copy of the family tree for long read-only periods. The nodes are stored
+ * in breadth-first order in flat arrays: node 0 is the boss, the inferiors of node i are at children[2 * i] and
+ * children[2 * i + 1] (-1 for none), and every rank is one contiguous run of indexes. A search reads one float and
+ * one int per step from arrays instead of following node objects spread over the heap, and the upper ranks, which
+ * every search passes, share a few cache lines.
+ *
+ * The members at a rank are found from the start of their run in O(k), and the division of the tree is copied from
+ * the boss. The copy does not follow changes to the live tree; isCurrent tells when it should be frozen again.
+ */
+public final class FrozenFamily {
+    // number of nodes
+    private final int count;
+    // GMS of each node
+    private final float[] gms;
+    // name of each node
+    private final String[] names;
+    // left and right inferior of each node, -1 for none
+    private final int[] children;
+    // first index in ties of the tied names of each node, the names of node i end at tieStart[i + 1]
+    private final int[] tieStart;
+    // tied names of all nodes
+    private final String[] ties;
+    // first index of each rank, the nodes of rank r end at levelStart[r + 1]
+    private final int[] levelStart;
+    // maximum number of independent members
+    private final int division;
+    // epoch of the live tree the copy was made at
+    private final long epoch;
+    /**
+     * Copies a family tree in breadth-first order.
+     *
+     * @param boss The root node of the family tree, or null for an empty tree.
+     * @param epoch The epoch of the family tree.
+     */
+    private FrozenFamily(Intelligence.Node boss,long epoch){
+        this.epoch = epoch;
+        count = count(boss);
+        gms = new float[count];
+        names = new String[count];
+        children = new int[2 * count];
+        tieStart = new int[count + 1];
+        levelStart = new int[Intelligence.findtheHeight(boss) + 2];
+        division = Intelligence.division(boss);
+        Intelligence.Node[] order = new Intelligence.Node[count];
+        int tail = 0;
+        int tieCount = 0;
+        if(boss != null){
+            order[tail++] = boss;
+        }
+        // the nodes of one rank are queued before the next rank starts, so a rank ends where its last node's
+        // inferiors begin
+        int level = 0;
+        int levelEnd = tail;
+        for(int i = 0;i < count;i++){
+            if(i == levelEnd){
+                levelStart[++level] = i;
+                levelEnd = tail;
+            }
+            Intelligence.Node t = order[i];
+            gms[i] = t.GMS;
+            names[i] = t.name;
+            tieStart[i] = tieCount;
+            tieCount += t.tieCount;
+            children[2 * i] = t.leftMember == null ? -1 : tail;
+            if(t.leftMember != null){
+                order[tail++] = t.leftMember;
+            }
+            children[2 * i + 1] = t.rightMember == null ? -1 : tail;
+            if(t.rightMember != null){
+                order[tail++] = t.rightMember;
+            }
+        }
+        levelStart[levelStart.length - 1] = count;
+        tieStart[count] = tieCount;
+        ties = new String[tieCount];
+        for(int i = 0;i < count;i++){
+            if(order[i].tieCount > 0){
+                System.arraycopy(order[i].ties,0,ties,tieStart[i],order[i].tieCount);
+            }
+        }
+    }
+    /**
+     * Copies the current family tree.
+     *
+     * @return The frozen copy.
+     */
+    public static FrozenFamily freeze(){
+        return new FrozenFamily(Intelligence.boss,Intelligence.epoch());
+    }
+    /**
+     * Tells if the live family tree is unchanged since the copy was made.
+     *
+     * @return True if the copy answers queries the same as the live tree.
+     */
+    public boolean isCurrent(){
+        return epoch == Intelligence.epoch();
+    }
+    /**
+     * Counts the nodes of a subtree.
+     *
+     * @param t The root node of the subtree.
+     * @return The number of nodes, tied members not counted.
+     */
+    private static int count(Intelligence.Node t){
+        return t == null ? 0 : 1 + count(t.leftMember) + count(t.rightMember);
+    }
+    /**
+     * Finds the index of the node of a GMS.
+     *
+     * @param number The GMS.
+     * @return The index of the node, or -1 if there is no such member.
+     */
+    public int find(float number){
+        int i = count == 0 ? -1 : 0;
+        while(i >= 0){
+            float g = gms[i];
+            if(number == g){
+                return i;
+            }
+            // the right inferior follows the left one, so the direction is an offset instead of a branch
+            i = children[2 * i + (number > g ? 1 : 0)];
+        }
+        return -1;
+    }
+    /**
+     * Finds the rank of a member.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The rank of the member, or the length of the searched path if there is no such member.
+     */
+    public int findTheRank(String name,float number){
+        int rank = 0;
+        int i = count == 0 ? -1 : 0;
+        while(i >= 0){
+            float g = gms[i];
+            if(number == g){
+                return rank;
+            }
+            i = children[2 * i + (number > g ? 1 : 0)];
+            rank++;
+        }
+        return rank;
+    }
+    /**
+     * Logs the members with a rank, in the same order as Intelligence.findSameRank.
+     *
+     * @param rank The rank to search for.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void findSameRank(int rank,Writer file) throws IOException {
+        if(rank < 0 || rank >= levelStart.length - 1){
+            return;
+        }
+        for(int i = levelStart[rank];i < levelStart[rank + 1];i++){
+            String score = String.format("%.3f",gms[i]);
+            file.write(" " + names[i] + " " + score);
+            for(int j = tieStart[i];j < tieStart[i + 1];j++){
+                file.write(" " + ties[j] + " " + score);
+            }
+        }
+    }
+    /**
+     * Finds the joint parent of two members.
+     *
+     * @param g1 The GMS of the first member.
+     * @param g2 The GMS of the second member.
+     * @return The index of the joint parent node, or -1 if the family tree is empty.
+     */
+    public int findParent(float g1,float g2){
+        int i = count == 0 ? -1 : 0;
+        while(i >= 0){
+            float g = gms[i];
+            int next;
+            if(g1 > g && g2 > g){
+                next = children[2 * i + 1];
+            }
+            else if(g1 < g && g2 < g){
+                next = children[2 * i];
+            }
+            else{
+                return i;
+            }
+            // the searches of both members end here
+            if(next < 0){
+                return i;
+            }
+            i = next;
+        }
+        return -1;
+    }
+    /**
+     * Returns the maximum number of members such that no member is chosen together with its direct superior.
+     *
+     * @return The maximum number of independent members.
+     */
+    public int division(){
+        return division;
+    }
+    /**
+     * Builds the output line of an INTEL_TARGET command.
+     *
+     * @param n1 The name of the first member.
+     * @param g1 The GMS of the first member.
+     * @param n2 The name of the second member.
+     * @param g2 The GMS of the second member.
+     * @return The result line, ending with a newline.
+     */
+    public String targetAnalysis(String n1,float g1,String n2,float g2){
+        int parent = findParent(g1,g2);
+        if(parent < 0){
+            throw new IllegalStateException("The family tree is empty");
+        }
+        return "Target Analysis Result: " + names[parent] + " " + String.format("%.3f",gms[parent]) + "\n";
+    }
+    /**
+     * Builds the output line of an INTEL_RANK command.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The result line, ending with a newline.
+     */
+    public String rankAnalysis(String name,float number){
+        return rankAnalysis(findTheRank(name,number));
+    }
+    /**
+     * Builds the output line of an INTEL_RANK command for a rank.
+     *
+     * @param rank The rank.
+     * @return The result line, ending with a newline.
+     */
+    public String rankAnalysis(int rank){
+        StringWriter line = new StringWriter();
+        line.write("Rank Analysis Result:");
+        try{
+            findSameRank(rank,line);
+        }
+        catch(IOException e){
+            // a StringWriter does not throw
+            throw new UncheckedIOException(e);
+        }
+        line.write("\n");
+        return line.toString();
+    }
+    /**
+     * Builds the output line of an INTEL_DIVIDE command.
+     *
+     * @return The result line, ending with a newline.
+     */
+    public String divisionAnalysis(){
+        return "Division Analysis Result: " + division + "\n";
+    }
+    /**
+     * Returns the number of nodes.
+     *
+     * @return The number of nodes, tied members not counted.
+     */
+    public int nodeCount(){
+        return count;
+    }
+    /**
+     * Returns the name of a node.
+     *
+     * @param i The index of the node.
+     * @return The name of the first member with the GMS of the node.
+     */
+    public String name(int i){
+        return names[i];
+    }
+    /**
+     * Returns the GMS of a node.
+     *
+     * @param i The index of the node.
+     * @return The GMS.
+     */
+    public float gms(int i){
+        return gms[i];
+    }
+}
@@ -1,10 +1,17 @@
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.io.File;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.management.JMException;
+import java.nio.file.Paths;
 /**
  * The Intelligence class represents a family tree intelligence system that can perform various operations
  * such as adding new members, searching for members, deleting members, analyzing targets, analyzing ranks,
@@ -25,6 +32,17 @@ public class Intelligence{
         public Node rightMember;
         // rank of member
         public int height;
+        // maximum number of independent members in the subtree of member, when member and its ties are chosen
+        public int withMember = 1;
+        // maximum number of independent members in the subtree of member, when member and its ties are not chosen
+        public int withoutMember;
+        // number of members in the subtree of member, tied members included
+        public int size = 1;
+        // names of the members with the same GMS who joined after member, or null; they are in the order they joined
+        // until one of them leaves and the last one takes its place
+        public String[] ties;
+        // number of names in ties
+        public int tieCount;
         /**
          * Constructs a new Node with the given name and GMS.
          *
@@ -41,18 +59,48 @@ public class Intelligence{
      * The root node of the family tree.
      */
     public static Node boss;
+    /**
+     * The nodes of the members by name.
+     */
+    private static final NameIndex nameIndex = new NameIndex();
+    /**
+     * The number of changes made to the family tree, so cached query results can tell if they are stale.
+     */
+    private static long epoch;
+    /**
+     * The number of nodes the current insert or delete passed on its way down, counted only when the metrics are
+     * on, so the shared field is not written on every step otherwise.
+     */
+    private static int descent;
     /**
      * Adds a new member to the family tree.
      *
      * @param name The name of the added member
      * @param number The GMS of the added member
-     * @param file The FileWriter object to log the operation.
+     * @param file The Writer object to log the operation.
      * @throws IOException If an I/O error occurs while writing to the file.
      */
 
-    public void addNewMember(String name,float number,FileWriter file) throws IOException {
-
-        boss = addNewMember(name,number,boss,file);
+    public void addNewMember(String name,float number,Writer file) throws IOException {
+        addNewMember(name,number,new FamilyLogFormatter(file));
+    }
+    /**
+     * Adds a new member to the family tree, reporting each welcome to a listener.
+     *
+     * @param name The name of the added member
+     * @param number The GMS of the added member
+     * @param listener The listener of the events, FamilyListener.NONE for none.
+     * @throws IOException If the listener fails to record an event.
+     */
+    public void addNewMember(String name,float number,FamilyListener listener) throws IOException {
+        if(Metrics.ENABLED){
+            descent = 0;
+        }
+        epoch++;
+        boss = addNewMember(name,number,boss,listener);
+        if(Metrics.ENABLED){
+            Metrics.descent(Metrics.ADD,descent);
+        }
     }
     /**
      * Recursive helper method to add a new member to the family tree.
@@ -60,33 +108,400 @@ public class Intelligence{
      * @param name The name of the member to be added.
      * @param number The GMS of the member to be added.
      * @param boss The current node being processed.
-     * @param file The FileWriter object to log the operation.
+     * @param listener The listener of the events.
      * @return The updated node after adding the new member.
-     * @throws IOException If an I/O error occurs while writing to the file.
+     * @throws IOException If the listener fails to record an event.
      */
 
-    public Node addNewMember(String name,float number,Node boss,FileWriter file) throws IOException {
+    public Node addNewMember(String name,float number,Node boss,FamilyListener listener) throws IOException {
         // if boss is null, create new member and make it boss
         if( boss == null ){
             Node newNode = new Node(name,number);
+            nameIndex.put(name,newNode,-1);
             return newNode;
         }
         // if number is greater than current GMS, continue with right inferior
         if (number > boss.GMS){
-            file.write((boss.name + " welcomed " + name + "\n"));
-            file.flush();
-            boss.rightMember = addNewMember(name,number,boss.rightMember,file);
+            if(Metrics.ENABLED){
+                descent++;
+            }
+            listener.welcomed(boss,name,number);
+            boss.rightMember = addNewMember(name,number,boss.rightMember,listener);
         }
         // if number is less than current GMS, continue with right inferior
         else if(number < boss.GMS){
-            file.write(boss.name + " welcomed " + name + "\n");
-            file.flush();
-            boss.leftMember = addNewMember(name,number,boss.leftMember,file);
+            if(Metrics.ENABLED){
+                descent++;
+            }
+            listener.welcomed(boss,name,number);
+            boss.leftMember = addNewMember(name,number,boss.leftMember,listener);
+        }
+        // if number is the same as current GMS, the member joins the current node
+        else{
+            listener.welcomed(boss,name,number);
+            addTie(boss,name);
         }
         boss.height = 1 + Math.max(findtheHeight(boss.leftMember), findtheHeight(boss.rightMember));
         // return balanced node;
         return balance( boss );
     }
+    /**
+     * Adds a batch of members to the family tree at once. The members and the current family tree are merged in
+     * GMS order and the tree is built again from the middle out, so no rotations are needed and the heights are
+     * set while building. Like addNewMember, a member whose GMS is already in the family joins the node with that
+     * GMS; within the batch the members with the same GMS join in batch order.
+     *
+     * If a file is given, the welcome log describes the finished tree, not the inserts: for each member in batch
+     * order, every superior on its path in the finished tree welcomes it. This is not the log addNewMember would
+     * write for the same members one by one, since those inserts rotate the tree in between; a member can even be
+     * welcomed by a member which comes later in the batch.
+     *
+     * @param names The names of the added members.
+     * @param numbers The GMS values of the added members.
+     * @param sorted True if numbers is already in non-decreasing order, so sorting is skipped.
+     * @param file The Writer object to log the operation, or null to write no log.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void bulkLoad(String[] names,float[] numbers,boolean sorted,Writer file) throws IOException {
+        bulkLoad(names,numbers,sorted,file == null ? FamilyListener.NONE : new FamilyLogFormatter(file));
+    }
+    /**
+     * Adds a batch of members to the family tree at once like bulkLoad with a Writer, reporting the welcomes to a
+     * listener.
+     *
+     * @param names The names of the added members.
+     * @param numbers The GMS values of the added members.
+     * @param sorted True if numbers is already in non-decreasing order, so sorting is skipped.
+     * @param listener The listener of the events, FamilyListener.NONE for none.
+     * @throws IOException If the listener fails to record an event.
+     */
+    public void bulkLoad(String[] names,float[] numbers,boolean sorted,FamilyListener listener) throws IOException {
+        if(names.length != numbers.length){
+            throw new IllegalArgumentException("Names and GMS values do not match: " + names.length + ", " + numbers.length);
+        }
+        int n = numbers.length;
+        // batch positions in GMS order, the earlier position first for equal GMS
+        int[] order = new int[n];
+        if(sorted){
+            for(int i = 0;i < n;i++){
+                checkNumber(numbers[i]);
+                if(i > 0 && numbers[i] < numbers[i - 1]){
+                    throw new IllegalArgumentException("GMS values are not sorted at position " + i);
+                }
+                order[i] = i;
+            }
+        }
+        else{
+            long[] keys = new long[n];
+            for(int i = 0;i < n;i++){
+                checkNumber(numbers[i]);
+                keys[i] = ((long) sortableBits(numbers[i]) << 32) | i;
+            }
+            Arrays.sort(keys);
+            for(int i = 0;i < n;i++){
+                order[i] = (int) keys[i];
+            }
+        }
+        // merge the current nodes with the new members, a member with the GMS of a node joins the node
+        Node[] current = new Node[size(boss)];
+        int nodes = collect(boss,current,0);
+        Node[] merged = new Node[nodes + n];
+        int count = 0;
+        int c = 0;
+        for(int i = 0;i < n;i++){
+            String name = names[order[i]];
+            float number = numbers[order[i]];
+            while(c < nodes && current[c].GMS < number){
+                merged[count++] = current[c++];
+            }
+            if(c < nodes && current[c].GMS == number){
+                merged[count++] = current[c++];
+            }
+            if(count > 0 && merged[count - 1].GMS == number){
+                addTie(merged[count - 1],name);
+            }
+            else{
+                Node member = new Node(name,number);
+                nameIndex.put(name,member,-1);
+                merged[count++] = member;
+            }
+        }
+        while(c < nodes){
+            merged[count++] = current[c++];
+        }
+        epoch++;
+        boss = build(merged,0,count - 1);
+        // the paths are only walked for a listener which records the welcomes
+        if(listener != FamilyListener.NONE){
+            for(int i = 0;i < n;i++){
+                logWelcome(names[i],numbers[i],listener);
+            }
+        }
+    }
+    /**
+     * Builds a balanced family tree from nodes in GMS order.
+     *
+     * @param nodes The nodes in GMS order.
+     * @param from The first node of the subtree.
+     * @param to The last node of the subtree.
+     * @return The root node of the subtree.
+     */
+    private static Node build(Node[] nodes,int from,int to){
+        if(from > to){
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Node node = nodes[middle];
+        node.leftMember = build(nodes,from,middle - 1);
+        node.rightMember = build(nodes,middle + 1,to);
+        update(node);
+        return node;
+    }
+    /**
+     * Reports the welcomes of a member of a bulk load on its path in the finished family tree. A tied member is
+     * also welcomed by the member it joined.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @param listener The listener of the events.
+     * @throws IOException If the listener fails to record an event.
+     */
+    private static void logWelcome(String name,float number,FamilyListener listener) throws IOException {
+        Node current = boss;
+        while(current != null && current.GMS != number){
+            listener.welcomed(current,name,number);
+            current = number > current.GMS ? current.rightMember : current.leftMember;
+        }
+        if(current != null && !current.name.equals(name)){
+            listener.welcomed(current,name,number);
+        }
+    }
+    /**
+     * Puts the nodes of a subtree into an array in GMS order.
+     *
+     * @param t The root node of the subtree.
+     * @param nodes The array to fill.
+     * @param i The position of the first node of the subtree.
+     * @return The position after the last node of the subtree.
+     */
+    private static int collect(Node t,Node[] nodes,int i){
+        if(t == null){
+            return i;
+        }
+        i = collect(t.leftMember,nodes,i);
+        nodes[i++] = t;
+        return collect(t.rightMember,nodes,i);
+    }
+    /**
+     * Returns the number of members in a subtree. The count is kept in the nodes, so no traversal is needed.
+     *
+     * @param t The root node of the subtree.
+     * @return The number of members.
+     */
+    public static int size(Node t){
+        if(t == null){
+            return 0;
+        }
+        return t.size;
+    }
+    /**
+     * Merges another family into this one. The other family must not share nodes with this one. Members with a GMS
+     * which is already in this family join the node with that GMS, after its own members. No log is written.
+     *
+     * @param other The root node of the other family. Its nodes become part of this family.
+     */
+    public void mergeFamily(Node other){
+        // the members of the other family are indexed at their own nodes first, the ones joining a node of this
+        // family are indexed again when they join it
+        index(other);
+        epoch++;
+        boss = union(boss,other);
+    }
+    /**
+     * Splits the members with GMS not less than a pivot off this family. No log is written.
+     *
+     * @param pivot The smallest GMS of the members split off.
+     * @return The root node of the family of the members split off, or null if there are none.
+     */
+    public Node splitFamily(float pivot){
+        Node[] parts = split(boss,pivot);
+        epoch++;
+        boss = parts[0];
+        Node upper = parts[1] == null ? parts[2] : join(null,parts[1],parts[2]);
+        unindex(upper);
+        return upper;
+    }
+    /**
+     * Joins two family trees and a node between them into one balanced tree. Every GMS in left must be less than
+     * the GMS of middle and every GMS in right greater. The taller tree is walked down along its inner side until a
+     * subtree about as tall as the other tree is found, so the cost is O(|height(left) - height(right)| + 1).
+     *
+     * @param left The root node of the lower tree, or null.
+     * @param middle The node between the trees; its inferiors are replaced.
+     * @param right The root node of the upper tree, or null.
+     * @return The root node of the joined tree.
+     */
+    public static Node join(Node left,Node middle,Node right){
+        int leftHeight = findtheHeight(left);
+        int rightHeight = findtheHeight(right);
+        if(leftHeight > rightHeight + 1){
+            left.rightMember = join(left.rightMember,middle,right);
+            return balance(left);
+        }
+        if(rightHeight > leftHeight + 1){
+            right.leftMember = join(left,middle,right.leftMember);
+            return balance(right);
+        }
+        middle.leftMember = left;
+        middle.rightMember = right;
+        update(middle);
+        return middle;
+    }
+    /**
+     * Joins two family trees into one balanced tree. Every GMS in left must be less than every GMS in right.
+     *
+     * @param left The root node of the lower tree, or null.
+     * @param right The root node of the upper tree, or null.
+     * @return The root node of the joined tree.
+     */
+    public static Node join(Node left,Node right){
+        if(left == null){
+            return right;
+        }
+        if(right == null){
+            return left;
+        }
+        // the smallest member of right becomes the node between the trees
+        Node[] smallest = new Node[1];
+        Node rest = removeSmallest(right,smallest);
+        return join(left,smallest[0],rest);
+    }
+    /**
+     * Splits a family tree at a pivot into the members below it, the node with the pivot GMS and the members above
+     * it, each part a balanced tree. The tree is taken apart along the search path of the pivot and the pieces are
+     * joined again on the way up, in O(log n).
+     *
+     * @param t The root node of the family tree. Its nodes are reused by the parts.
+     * @param pivot The GMS to split at.
+     * @return The lower tree, the node with the pivot GMS with no inferiors, and the upper tree; each may be null.
+     */
+    public static Node[] split(Node t,float pivot){
+        if(t == null){
+            return new Node[3];
+        }
+        Node left = t.leftMember;
+        Node right = t.rightMember;
+        if(pivot < t.GMS){
+            Node[] parts = split(left,pivot);
+            parts[2] = join(parts[2],t,right);
+            return parts;
+        }
+        if(pivot > t.GMS){
+            Node[] parts = split(right,pivot);
+            parts[0] = join(left,t,parts[0]);
+            return parts;
+        }
+        t.leftMember = null;
+        t.rightMember = null;
+        update(t);
+        return new Node[]{left,t,right};
+    }
+    /**
+     * Joins two family trees with any GMS values into one balanced tree. The tree b is split at the root of a, the
+     * halves are joined with the inferiors of a and the results are joined around the root of a, which takes
+     * O(m log(n / m + 1)) for trees of m and n members, m not greater than n. A member of b with a GMS already in a
+     * joins the node of a with that GMS.
+     *
+     * @param a The root node of the first tree, or null.
+     * @param b The root node of the second tree, or null.
+     * @return The root node of the joined tree.
+     */
+    public static Node union(Node a,Node b){
+        if(a == null){
+            return b;
+        }
+        if(b == null){
+            return a;
+        }
+        Node left = a.leftMember;
+        Node right = a.rightMember;
+        Node[] parts = split(b,a.GMS);
+        Node same = parts[1];
+        if(same != null){
+            addTie(a,same.name);
+            for(int i = 0;i < same.tieCount;i++){
+                addTie(a,same.ties[i]);
+            }
+        }
+        return join(union(left,parts[0]),a,union(right,parts[2]));
+    }
+    /**
+     * Removes the member with the smallest GMS from a family tree.
+     *
+     * @param t The root node of the family tree, not null.
+     * @param smallest The array the removed node is written to, at index 0.
+     * @return The root node of the balanced tree without the node.
+     */
+    private static Node removeSmallest(Node t,Node[] smallest){
+        if(t.leftMember == null){
+            smallest[0] = t;
+            Node right = t.rightMember;
+            t.rightMember = null;
+            update(t);
+            return right;
+        }
+        t.leftMember = removeSmallest(t.leftMember,smallest);
+        return balance(t);
+    }
+    /**
+     * Finds the node with a GMS.
+     *
+     * @param number The GMS.
+     * @return The node, or null if no member has the GMS.
+     */
+    private static Node findNode(float number){
+        Node current = boss;
+        while(current != null && current.GMS != number){
+            current = number > current.GMS ? current.rightMember : current.leftMember;
+        }
+        return current;
+    }
+    /**
+     * Takes the members of a subtree out of the name index.
+     *
+     * @param t The root node of the subtree.
+     */
+    private static void unindex(Node t){
+        if(t == null){
+            return;
+        }
+        nameIndex.remove(t.name,t);
+        for(int i = 0;i < t.tieCount;i++){
+            nameIndex.remove(t.ties[i],t);
+        }
+        unindex(t.leftMember);
+        unindex(t.rightMember);
+    }
+    /**
+     * Checks that a GMS can be ordered against the others.
+     *
+     * @param number The GMS.
+     */
+    private static void checkNumber(float number){
+        if(Float.isNaN(number)){
+            throw new IllegalArgumentException("GMS is not a number");
+        }
+    }
+    /**
+     * Turns a GMS into an int with the same order, with -0.0 and 0.0 equal like the comparisons of the tree.
+     *
+     * @param number The GMS.
+     * @return The sortable bits of the GMS.
+     */
+    private static int sortableBits(float number){
+        int bits = Float.floatToIntBits(number + 0.0f);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
     /**
      *
      * Helper function for searchMember2 function with 3 parameter
@@ -109,6 +524,7 @@ public class Intelligence{
     public static int searchMember2(String name,float number,Node boss){
 
         Node current = boss;
+        int depth = 0;
         // find the node using iterative method from boss to the node
         while(current!= null){
             if(number > current.GMS){
@@ -118,10 +534,14 @@ public class Intelligence{
                 current = current.leftMember;
             }
             else{
-                // return the height of this node
-                return findtheHeight(current);
+                break;
             }
+            depth++;
+        }
+        if(Metrics.ENABLED){
+            Metrics.descent(Metrics.SEARCH,depth);
         }
+        // return the height of this node
         return findtheHeight(current);
     }
     /**
@@ -180,11 +600,30 @@ public class Intelligence{
      *
      * @param name The name of the member to be deleted.
      * @param number The Genetic Match Score (GMS) of the member to be deleted.
-     * @param file The FileWriter object to log the operation.
+     * @param file The Writer object to log the operation.
      * @throws IOException If an I/O error occurs while writing to the file.
      */
-    public void deleteMember(String name,float number,FileWriter file) throws IOException {
-        boss = deleteMember(name,number,boss,file,true);
+    public void deleteMember(String name,float number,Writer file) throws IOException {
+        deleteMember(name,number,new FamilyLogFormatter(file));
+    }
+    /**
+     * Deletes a member from the family tree, reporting the departure to a listener. When several members have the
+     * GMS, the name tells which one leaves; if none of them has the name, nothing changes.
+     *
+     * @param name The name of the member to be deleted.
+     * @param number The GMS of the member to be deleted.
+     * @param listener The listener of the events, FamilyListener.NONE for none.
+     * @throws IOException If the listener fails to record an event.
+     */
+    public void deleteMember(String name,float number,FamilyListener listener) throws IOException {
+        if(Metrics.ENABLED){
+            descent = 0;
+        }
+        epoch++;
+        boss = deleteMember(name,number,boss,listener,true);
+        if(Metrics.ENABLED){
+            Metrics.descent(Metrics.DELETE,descent);
+        }
     }
     /**
      * Recursive helper method to delete a member from the family tree based on name and GMS.
@@ -192,51 +631,93 @@ public class Intelligence{
      * @param name The name of the member to be deleted.
      * @param number The Genetic Match Score (GMS) of the member to be deleted.
      * @param boss The current node being processed.
-     * @param file The FileWriter object to log the operation.
-     * @param m A boolean flag indicating whether to log the operation or not.
+     * @param listener The listener of the events.
+     * @param m A boolean flag indicating whether to report the departure or not.
      * @return The updated node after deleting the member.
-     * @throws IOException If an I/O error occurs while writing to the file.
+     * @throws IOException If the listener fails to record an event.
      */
-    public Node deleteMember(String name, float number, Node boss,FileWriter file,boolean m) throws IOException {
+    public Node deleteMember(String name, float number, Node boss,FamilyListener listener,boolean m) throws IOException {
         if (boss == null) {
             return null;
         }
         if (number > boss.GMS) {
-            boss.rightMember = deleteMember(name, number, boss.rightMember,file,m);
+            // only the search for the deleted member counts, not the removal of its successor
+            if(Metrics.ENABLED && m){
+                descent++;
+            }
+            boss.rightMember = deleteMember(name, number, boss.rightMember,listener,m);
         } else if (number < boss.GMS) {
-            boss.leftMember = deleteMember(name, number, boss.leftMember,file,m);
-        } else if(boss.leftMember != null && boss.rightMember != null){
+            if(Metrics.ENABLED && m){
+                descent++;
+            }
+            boss.leftMember = deleteMember(name, number, boss.leftMember,listener,m);
+        }
+        // if other members have the same GMS, only the member with the name leaves and the node stays; a name of
+        // none of them changes nothing
+        else if(m && boss.tieCount > 0){
+            // the member of the node leaves, the last tied member takes its place, so no tie is shifted
+            if(name.equals(boss.name)){
+                String last = boss.ties[boss.tieCount - 1];
+                listener.departed(boss.name,number,last);
+                nameIndex.remove(boss.name,boss);
+                boss.name = last;
+                removeTie(boss,boss.tieCount - 1);
+                nameIndex.put(last,boss,-1);
+            }
+            else{
+                // the index knows the position of the name, unless another member of the same name was put last
+                int tie = nameIndex.position(name,boss);
+                if(tie < 0){
+                    tie = indexOfTie(boss,name);
+                }
+                if(tie >= 0){
+                    listener.departed(name,number,null);
+                    removeTie(boss,tie);
+                    nameIndex.remove(name,boss);
+                }
+            }
+        }
+        else if(boss.leftMember != null && boss.rightMember != null){
             Node myNode = boss.rightMember;
             while (myNode.leftMember != null) {
                 myNode = myNode.leftMember;
             }
             boss.GMS = myNode.GMS;
-            file.write(boss.name + " left the family, replaced by " + myNode.name + "\n");
-            file.flush();
+            listener.departed(boss.name,number,myNode.name);
+            nameIndex.remove(boss.name,boss);
+            // the successor moves up with its tied members
             boss.name = myNode.name;
-            boss.rightMember = deleteMember(myNode.name, myNode.GMS, boss.rightMember, file,false);
+            boss.ties = myNode.ties;
+            boss.tieCount = myNode.tieCount;
+            nameIndex.put(boss.name,boss,-1);
+            for(int i = 0;i < boss.tieCount;i++){
+                nameIndex.put(boss.ties[i],boss,i);
+            }
+            boss.rightMember = deleteMember(myNode.name, myNode.GMS, boss.rightMember, listener,false);
         }
         // if it does not have a child
         else if(boss.leftMember == null && boss.rightMember == null){
             if(m) {
-                file.write(boss.name + " left the family, replaced by nobody" + "\n");
-                file.flush();
+                listener.departed(boss.name,number,null);
             }
+            // the successor copied into a superior is not in the index any more, so nothing is removed for it
+            nameIndex.remove(boss.name,boss);
             // make it null
             boss = null;
         }
         else{
             // if it has one child, and it is right child , go with right
+            nameIndex.remove(boss.name,boss);
             if (boss.leftMember == null){
                 if(m) {
-                    file.write(boss.name + " left the family, replaced by " + boss.rightMember.name + "\n");
+                    listener.departed(boss.name,number,boss.rightMember.name);
                 }
                 boss= boss.rightMember;
             }
             // if it has one child, and it is left child, go with left
             else{
                 if(m) {
-                    file.write(boss.name + " left the family, replaced by " + boss.leftMember.name + "\n");
+                    listener.departed(boss.name,number,boss.leftMember.name);
                 }
                 boss= boss.leftMember;
             }
@@ -245,6 +726,76 @@ public class Intelligence{
         }
         return balance(boss);
     }
+    /**
+     * Deletes a member from the family tree based on name only. The node is found in the name index, so the tree
+     * is not searched for the name.
+     *
+     * @param name The name of the member to be deleted.
+     * @param file The Writer object to log the operation.
+     * @return True if a member with the name was found and deleted.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public boolean deleteMemberByName(String name,Writer file) throws IOException {
+        Node member = nameIndex.get(name);
+        if(member == null){
+            return false;
+        }
+        deleteMember(name,member.GMS,file);
+        return true;
+    }
+    /**
+     * Finds a member by name in O(1).
+     *
+     * @param name The name of the member.
+     * @return The node of the member, or null if no member has the name.
+     */
+    public static Node findMember(String name){
+        return nameIndex.get(name);
+    }
+    /**
+     * Removes every member from the family tree.
+     */
+    public static void clear(){
+        epoch++;
+        boss = null;
+        nameIndex.clear();
+    }
+    /**
+     * Returns the number of changes made to the family tree so far. It is increased by every added or deleted
+     * member, every rotation and every bulk change, so a result computed at the same epoch is still valid.
+     *
+     * @return The current epoch.
+     */
+    public static long epoch(){
+        return epoch;
+    }
+    /**
+     * Replaces the family tree with a tree built elsewhere, such as one loaded from disk. The heights, sizes and
+     * division values of the nodes must already be set; the name index is built again.
+     *
+     * @param root The root node of the new family tree, or null for an empty tree.
+     */
+    public static void restore(Node root){
+        clear();
+        boss = root;
+        index(root);
+    }
+    /**
+     * Puts the members of a subtree into the name index.
+     *
+     * @param t The root node of the subtree.
+     */
+    private static void index(Node t){
+        if(t == null){
+            return;
+        }
+        nameIndex.put(t.name,t,-1);
+        for(int i = 0;i < t.tieCount;i++){
+            nameIndex.put(t.ties[i],t,i);
+        }
+        index(t.leftMember);
+        index(t.rightMember);
+    }
     /**
      * Determines the type of imbalance in a given node according to AVL tree rotation rules.
      *
@@ -317,53 +868,50 @@ public class Intelligence{
         if(node == null){
             return null;
         }
-        node.height = Math.max( findtheHeight( node.leftMember), findtheHeight( node.rightMember ) ) + 1;
+        update(node);
         // if it is balanced, return node
         if(checkBalance(node)){
-            node.height = Math.max( findtheHeight( node.leftMember), findtheHeight( node.rightMember ) ) + 1;
             return node;
         }
+        int type = indicateType(node);
+        // a rotation changes the ranks of the members below it
+        epoch++;
+        if(Metrics.ENABLED){
+            Metrics.rotation(type);
+        }
         // make rotations
-        if (indicateType(node) == 1){
+        if (type == 1){
             Node son = node.leftMember;
             Node temp = son.rightMember;
             son.rightMember = node;
             node.leftMember = temp;
-            node.height = Math.max(findtheHeight(node.leftMember),findtheHeight(node.rightMember)) +1;
-            //son.height = Math.max(findtheHeight(son.leftMember),node.height) + 1;
-            son.height = Math.max(findtheHeight(son.leftMember),node.height + 1);
-            node.height = Math.max( findtheHeight( node.leftMember), findtheHeight( node.rightMember ) ) + 1;
+            // node is below son now, so it is updated first
+            update(node);
+            update(son);
             return son;
         }// make rotations
-        else if(indicateType(node) == 4){
+        else if(type == 4){
             Node son = node.rightMember;
             Node temp = son.leftMember;
             son.leftMember =node;
             node.rightMember =temp;
-            node.height = Math.max(findtheHeight(node.leftMember),findtheHeight(node.rightMember)) +1;
-            //son.height = Math.max(findtheHeight(son.rightMember),node.height) + 1;
-            son.height = Math.max(findtheHeight(son.leftMember),findtheHeight(son.rightMember) + 1);
-            node.height = Math.max( findtheHeight( node.leftMember), findtheHeight( node.rightMember ) ) + 1;
-
+            update(node);
+            update(son);
             return son;
         }// make rotations
-        else if(indicateType(node) == 2){
+        else if(type == 2){
             Node son = node.leftMember;
             Node child = son.rightMember;
             Node temp = child.leftMember;
             node.leftMember = child;
             child.leftMember = son;
             son.rightMember = temp;
-            son.height = Math.max(findtheHeight(son.leftMember),findtheHeight(son.rightMember)) + 1;
-            child.height = Math.max(findtheHeight(child.rightMember), son.height) + 1;
             Node temp2 = child.rightMember;
             child.rightMember = node;
             node.leftMember = temp2;
-            node.height = Math.max(findtheHeight(node.leftMember),findtheHeight(node.rightMember)) +1;
-            //child.height = Math.max(findtheHeight(child.leftMember),node.height) + 1;
-            child.height = Math.max(findtheHeight(child.leftMember),findtheHeight(child.rightMember)) + 1;
-            node.height = Math.max( findtheHeight( node.leftMember), findtheHeight( node.rightMember ) ) + 1;
-
+            update(son);
+            update(node);
+            update(child);
             return child;
         }// make rotations
         else{
@@ -373,20 +921,80 @@ public class Intelligence{
             node.rightMember = child;
             child.rightMember = son;
             son.leftMember = temp;
-            son.height = Math.max(findtheHeight(son.leftMember),findtheHeight(son.rightMember)) + 1;
-            child.height = Math.max(findtheHeight(child.leftMember), son.height) + 1;
             Node temp2 = child.leftMember;
             child.leftMember = node;
             node.rightMember = temp2;
-            node.height = Math.max(findtheHeight(node.leftMember),findtheHeight(node.rightMember)) +1;
-            //child.height = Math.max(findtheHeight(child.rightMember),node.height) + 1;
-            child.height = Math.max(findtheHeight(child.leftMember),findtheHeight(child.rightMember)) + 1;
-            node.height = Math.max( findtheHeight( node.leftMember), findtheHeight( node.rightMember ) ) + 1;
-
+            update(son);
+            update(node);
+            update(child);
             return child;
         }
 
     }
+    /**
+     * Recomputes the height, the size and the division values of a node from its inferiors. The inferiors must
+     * already be up to date.
+     *
+     * @param node The node to update.
+     */
+    public static void update(Node node){
+        Node left = node.leftMember;
+        Node right = node.rightMember;
+        node.height = Math.max(findtheHeight(left),findtheHeight(right)) + 1;
+        node.size = 1 + node.tieCount + size(left) + size(right);
+        // if the members of the node are in the set, their inferiors can not be
+        node.withMember = 1 + node.tieCount + withoutMember(left) + withoutMember(right);
+        node.withoutMember = division(left) + division(right);
+    }
+    /**
+     * Adds a member to the tied members of a node and puts it into the name index.
+     *
+     * @param node The node with the same GMS.
+     * @param name The name of the member.
+     */
+    private static void addTie(Node node,String name){
+        if(node.ties == null){
+            node.ties = new String[2];
+        }
+        else if(node.tieCount == node.ties.length){
+            node.ties = Arrays.copyOf(node.ties,node.tieCount * 2);
+        }
+        nameIndex.put(name,node,node.tieCount);
+        node.ties[node.tieCount++] = name;
+    }
+    /**
+     * Finds a member among the tied members of a node.
+     *
+     * @param node The node.
+     * @param name The name of the member.
+     * @return The position of the member in the ties of the node, or -1 if it is not there.
+     */
+    private static int indexOfTie(Node node,String name){
+        for(int i = 0;i < node.tieCount;i++){
+            if(node.ties[i].equals(name)){
+                return i;
+            }
+        }
+        return -1;
+    }
+    /**
+     * Removes a member from the tied members of a node in O(1). The last tied member moves into its position, so
+     * the others do not keep the order they joined in.
+     *
+     * @param node The node.
+     * @param i The position of the member in the ties of the node.
+     */
+    private static void removeTie(Node node,int i){
+        int last = --node.tieCount;
+        if(i < last){
+            node.ties[i] = node.ties[last];
+            nameIndex.move(node.ties[i],node,i);
+        }
+        node.ties[last] = null;
+        if(node.tieCount == 0){
+            node.ties = null;
+        }
+    }
     /**
      * Prints the family tree in in-order traversal.
      *
@@ -406,32 +1014,50 @@ public class Intelligence{
      *
      * @param t The root node of the family tree.
      * @param rank The rank to search for.
-     * @param file The FileWriter object to log the result.
+     * @param file The Writer object to log the result.
      * @throws IOException If an I/O error occurs while writing to the file.
      */
-    public static void findSameRank(Node t, int rank,FileWriter file) throws IOException {
+    public static void findSameRank(Node t, int rank,Writer file) throws IOException {
         if(t == null){
             return;
         }
-        int root =findTheRank(t.name,t.GMS);
+        findSameRank(t,findTheRank(t.name,t.GMS),rank,file);
+    }
+    /**
+     * Recursive helper method for findSameRank. The rank of each node is carried down from its superior, and a
+     * subtree is skipped when its height does not reach the searched rank, so only the reported members and their
+     * superiors are visited.
+     *
+     * @param t The current node being processed.
+     * @param root The rank of the current node.
+     * @param rank The rank to search for.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private static void findSameRank(Node t, int root, int rank,Writer file) throws IOException {
+        // a leaf has height 0, so the deepest rank under t is root + t.height
+        if(t == null || root > rank || root + t.height < rank){
+            return;
+        }
         // current node is same rank with given node, write the number
-        if( root <= rank)
-        {
-            if(root == rank) {
-                file.write(" " +t.name + " " + String.format("%.3f", t.GMS));
-                return;
+        if(root == rank) {
+            String gms = String.format("%.3f", t.GMS);
+            file.write(" " +t.name + " " + gms);
+            for(int i = 0;i < t.tieCount;i++){
+                file.write(" " + t.ties[i] + " " + gms);
             }
-            findSameRank( t.leftMember ,rank,file);
-            findSameRank( t.rightMember ,rank,file);
+            return;
         }
+        findSameRank( t.leftMember ,root + 1,rank,file);
+        findSameRank( t.rightMember ,root + 1,rank,file);
     }
     /**
      * Helper function for findSameRank function with 3 parameter*
      * @param rank The rank to search for.
-     * @param file The FileWriter object to log the result.
+     * @param file The Writer object to log the result.
      * @throws IOException If an I/O error occurs while writing to the file.
      */
-    public static void findSameRank(int rank,FileWriter file) throws IOException {
+    public static void findSameRank(int rank,Writer file) throws IOException {
         findSameRank( boss ,rank,file);
     }
     /**
@@ -443,83 +1069,352 @@ public class Intelligence{
         return boss == null;
     }
     /**
-     * Finds the parent node of two members in the family tree based on their names and GMS.
+     * Walks the members with GMS in [from, to] in GMS order. The members are found one at a time while the
+     * iterator is used, so a scan of k members visits O(log n + k) nodes. Tied members come as one node.
+     *
+     * @param from The smallest GMS in the range.
+     * @param to The largest GMS in the range.
+     * @return An iterator over the members in the range.
+     */
+    public static Iterator<Node> rangeScan(float from,float to){
+        return Spliterators.iterator(new MemberSpliterator(boss,from,to));
+    }
+    /**
+     * Streams the members with GMS in [from, to] in GMS order. A parallel stream splits the family tree at its
+     * subtree boundaries.
+     *
+     * @param from The smallest GMS in the range.
+     * @param to The largest GMS in the range.
+     * @param parallel True for a parallel stream.
+     * @return A stream of the members in the range.
+     */
+    public static Stream<Node> members(float from,float to,boolean parallel){
+        return StreamSupport.stream(new MemberSpliterator(boss,from,to),parallel);
+    }
+    /**
+     * Finds the member with the largest GMS not greater than a number.
+     *
+     * @param number The GMS to look for.
+     * @return The member, or null if every member has a greater GMS.
+     */
+    public static Node floor(float number){
+        Node found = null;
+        Node current = boss;
+        while(current != null){
+            if(number < current.GMS){
+                current = current.leftMember;
+            }
+            else if(number > current.GMS){
+                // a candidate, but a closer one may be on the right
+                found = current;
+                current = current.rightMember;
+            }
+            else{
+                return current;
+            }
+        }
+        return found;
+    }
+    /**
+     * Finds the member with the smallest GMS not less than a number.
+     *
+     * @param number The GMS to look for.
+     * @return The member, or null if every member has a smaller GMS.
+     */
+    public static Node ceiling(float number){
+        Node found = null;
+        Node current = boss;
+        while(current != null){
+            if(number > current.GMS){
+                current = current.rightMember;
+            }
+            else if(number < current.GMS){
+                // a candidate, but a closer one may be on the left
+                found = current;
+                current = current.leftMember;
+            }
+            else{
+                return current;
+            }
+        }
+        return found;
+    }
+    /**
+     * Finds the member with the k-th smallest GMS. The subtree sizes tell which side the member is on, so only
+     * one path is walked. Tied members count one by one.
+     *
+     * @param k The position of the member in GMS order, starting from 1.
+     * @return The node holding the member, or null if k is not between 1 and the number of members.
+     */
+    public static Node kthSmallest(int k){
+        if(k < 1 || k > size(boss)){
+            return null;
+        }
+        Node current = boss;
+        while(true){
+            int left = size(current.leftMember);
+            if(k <= left){
+                current = current.leftMember;
+            }
+            else if(k <= left + 1 + current.tieCount){
+                return current;
+            }
+            else{
+                k -= left + 1 + current.tieCount;
+                current = current.rightMember;
+            }
+        }
+    }
+    /**
+     * Counts the members with GMS less than a number, which is the position the number would take in GMS order.
+     *
+     * @param number The GMS to compare with.
+     * @return The number of members with a smaller GMS.
+     */
+    public static int countBelow(float number){
+        int count = 0;
+        Node current = boss;
+        while(current != null){
+            if(number > current.GMS){
+                // the members of the node and its left inferiors are all smaller
+                count += size(current.leftMember) + 1 + current.tieCount;
+                current = current.rightMember;
+            }
+            else{
+                current = current.leftMember;
+            }
+        }
+        return count;
+    }
+    /**
+     * Counts the members with GMS not greater than a number.
+     *
+     * @param number The GMS to compare with.
+     * @return The number of members with a smaller or equal GMS.
+     */
+    public static int countAtMost(float number){
+        int count = 0;
+        Node current = boss;
+        while(current != null){
+            if(number >= current.GMS){
+                count += size(current.leftMember) + 1 + current.tieCount;
+                current = current.rightMember;
+            }
+            else{
+                current = current.leftMember;
+            }
+        }
+        return count;
+    }
+    /**
+     * Counts the members with GMS in [from, to].
+     *
+     * @param from The smallest GMS in the range.
+     * @param to The largest GMS in the range.
+     * @return The number of members in the range.
+     */
+    public static int countInRange(float from,float to){
+        if(from > to){
+            return 0;
+        }
+        return countAtMost(to) - countBelow(from);
+    }
+    /**
+     * Finds the member at a percentile of the GMS values, using the nearest rank: the smallest member such that at
+     * least the given fraction of the members have a GMS not greater than its GMS.
+     *
+     * @param fraction The percentile as a fraction between 0 and 1.
+     * @return The member at the percentile, or null if the family tree is empty.
+     */
+    public static Node percentile(double fraction){
+        if(!(fraction >= 0 && fraction <= 1)){
+            throw new IllegalArgumentException("Percentile must be between 0 and 1: " + fraction);
+        }
+        int n = size(boss);
+        if(n == 0){
+            return null;
+        }
+        return kthSmallest(Math.max(1,(int) Math.ceil(fraction * n)));
+    }
+    /**
+     * Finds the member with the median GMS. For an even number of members the lower one of the two middle members
+     * is returned.
+     *
+     * @return The median member, or null if the family tree is empty.
+     */
+    public static Node median(){
+        return percentile(0.5);
+    }
+    /**
+     * Finds the parent node of two members in the family tree based on their names and GMS. It goes down from the
+     * boss while both members are on the same side, so no path lists are created.
      *
      * @param n1 The name of the first member.
      * @param g1 The GMS of the first member.
      * @param n2 The name of the second member.
      * @param g2 The GMS of the second member.
      * @param boss The current node being processed.
-     * @return The parent node of the two specified members.
+     * @return The parent node of the two specified members, or null if the family tree is empty.
      */
     public static Node findParent(String n1,float g1,String n2,float g2,Node boss){
-        //create lists including the nodes from boss to the given node
-        ArrayList<Node> first = searchMember(n1,g1,boss);
-        ArrayList<Node> second = searchMember(n2,g2,boss);
-        Node parentNode = new Node(boss.name,boss.GMS);
-        // it means that one node is boss
-        if(first.isEmpty() || second.isEmpty()){
-            return parentNode;
-        }
-        // find the first joint parent
-        if (first.size() > second.size()){
-            for(int i = 0;i <first.size();i++){
-                if(i == second.size()){
-                    return parentNode;
-                }
-                if(first.get(i) == second.get(i)){
-                    parentNode = first.get(i);
-                }
-                else{
-                    break;
-                }
+        Node current = boss;
+        while(current != null){
+            Node next;
+            // both members are on the right side
+            if(g1 > current.GMS && g2 > current.GMS){
+                next = current.rightMember;
             }
-        }
-        else{
-            for(int i = 0;i <second.size();i++){
-                if(i == first.size()){
-                    return parentNode;
-                }
-                if(first.get(i) == second.get(i)){
-                    parentNode = first.get(i);
-                }
-                else{
-                    break;
-                }
+            // both members are on the left side
+            else if(g1 < current.GMS && g2 < current.GMS){
+                next = current.leftMember;
+            }
+            // members are on different sides, or one of them is the current node
+            else{
+                return current;
+            }
+            // the searches of both members end here
+            if(next == null){
+                return current;
             }
+            current = next;
         }
-        return parentNode;
+        return null;
     }
-
-    public static int division(Node n){
-        HashMap<Node,Integer> dict = new HashMap<>();
-        filldict(n,dict);
-        division(n,dict);
-        int i = 0;
-        for (Node m:dict.keySet()){
-            if(dict.get(m)==1){
+    /**
+     * Finds the parent nodes of many pairs of members in one traversal of the family tree. The pairs are
+     * partitioned at each node into the ones going left, the ones ending at the node and the ones going right, so
+     * every node is visited at most once.
+     *
+     * @param first The GMS values of the first members of the pairs.
+     * @param second The GMS values of the second members of the pairs.
+     * @param boss The root node of the family tree.
+     * @param result The array the parent node of each pair is written to, at the index of the pair.
+     */
+    public static void findParents(float[] first,float[] second,Node boss,Node[] result){
+        if(first.length != second.length || result.length < first.length){
+            throw new IllegalArgumentException("Pair arrays do not match: " + first.length + ", "
+                    + second.length + ", " + result.length);
+        }
+        int[] order = new int[first.length];
+        for(int i = 0;i < order.length;i++){
+            order[i] = i;
+        }
+        findParents(first,second,order,0,order.length,boss,result);
+    }
+    /**
+     * Recursive helper method for findParents.
+     *
+     * @param first The GMS values of the first members of the pairs.
+     * @param second The GMS values of the second members of the pairs.
+     * @param order The indexes of the pairs, reordered in place.
+     * @param from The first position in order of the pairs under this node.
+     * @param to The position after the last pair under this node.
+     * @param node The current node being processed.
+     * @param result The array the parent node of each pair is written to.
+     */
+    private static void findParents(float[] first,float[] second,int[] order,int from,int to,Node node,Node[] result){
+        if(from >= to || node == null){
+            return;
+        }
+        // [from,left) goes left, [left,right) ends here, [right,to) goes right
+        int left = from;
+        int right = to;
+        int i = from;
+        while(i < right){
+            int pair = order[i];
+            float g1 = first[pair];
+            float g2 = second[pair];
+            if(g1 < node.GMS && g2 < node.GMS && node.leftMember != null){
+                order[i++] = order[left];
+                order[left++] = pair;
+            }
+            else if(g1 > node.GMS && g2 > node.GMS && node.rightMember != null){
+                order[i] = order[--right];
+                order[right] = pair;
+            }
+            else{
+                result[pair] = node;
                 i++;
             }
         }
-        return i;
+        findParents(first,second,order,from,left,node.leftMember,result);
+        findParents(first,second,order,right,to,node.rightMember,result);
     }
-    public static void division(Node n,HashMap<Node,Integer> dict){
-        if (n == null){
-            return;
+    /**
+     * Builds the output line of an INTEL_TARGET command: the joint parent of two members.
+     *
+     * @param n1 The name of the first member.
+     * @param g1 The GMS of the first member.
+     * @param n2 The name of the second member.
+     * @param g2 The GMS of the second member.
+     * @return The result line, ending with a newline.
+     */
+    public static String targetAnalysis(String n1,float g1,String n2,float g2){
+        Node unionParent = findParent(n1,g1,n2,g2,boss);
+        return "Target Analysis Result: " + unionParent.name + " " + String.format("%.3f",unionParent.GMS) + "\n";
+    }
+    /**
+     * Builds the output line of an INTEL_RANK command: all members with the same rank as the given member.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The result line, ending with a newline.
+     */
+    public static String rankAnalysis(String name,float number){
+        return rankAnalysis(findTheRank(name,number));
+    }
+    /**
+     * Builds the output line of an INTEL_RANK command for a rank: all members at that rank.
+     *
+     * @param rank The rank.
+     * @return The result line, ending with a newline.
+     */
+    public static String rankAnalysis(int rank){
+        StringWriter line = new StringWriter();
+        line.write("Rank Analysis Result:");
+        try{
+            findSameRank(rank,line);
+        }
+        catch(IOException e){
+            // a StringWriter does not throw
+            throw new UncheckedIOException(e);
         }
-        division(n.leftMember,dict);
-        division(n.rightMember,dict);
-        if((n.leftMember == null ||dict.get(n.leftMember) == 0) && (n.rightMember == null||dict.get(n.rightMember) == 0 )){
-            dict.replace(n,1);
+        line.write("\n");
+        return line.toString();
+    }
+    /**
+     * Builds the output line of an INTEL_DIVIDE command: the maximum number of independent members.
+     *
+     * @return The result line, ending with a newline.
+     */
+    public static String divisionAnalysis(){
+        return "Division Analysis Result: " + division(boss) + "\n";
+    }
+
+    /**
+     * Finds the maximum number of members in the family tree such that no member is chosen together with its
+     * direct superior. The value is kept in the nodes, so no traversal is needed.
+     *
+     * @param n The root node of the family tree.
+     * @return The maximum number of independent members.
+     */
+    public static int division(Node n){
+        if (n == null){
+            return 0;
         }
+        return Math.max(n.withMember,n.withoutMember);
     }
-    public static void filldict(Node n,HashMap<Node,Integer> dict){
+    /**
+     * Finds the maximum number of independent members under a node when the node itself is not chosen.
+     *
+     * @param n The node.
+     * @return The maximum number of independent members without the node.
+     */
+    private static int withoutMember(Node n){
         if (n == null){
-            return;
+            return 0;
         }
-        filldict(n.leftMember,dict);
-        filldict(n.rightMember,dict);
-        dict.put(n,0);
+        return n.withoutMember;
     }
 
 
@@ -532,61 +1427,83 @@ public class Intelligence{
 
     public static void main(String[] args) throws IOException {
         Intelligence t = new Intelligence();
-        // reading input file
-        File myObj = new File(args[0]);
-        // creating output file
-        FileWriter outputStream = new FileWriter(args[1]);
-        Scanner myReader = new Scanner(myObj);
-        // create boss of the tree
-        String bossName = myReader.next();
-        float bossGMS = myReader.nextFloat();
-        t.addNewMember(bossName,bossGMS,outputStream);
-        // read the file
-        while(myReader.hasNextLine()){
-            if(!myReader.hasNext()){
-                break;
+        // creating output file, the log is buffered and written when the buffer is full or the file is closed; both
+        // files are closed even if a command fails, so the buffered log is not lost and a mapped output file is cut
+        // back to the written length
+        try(Writer outputStream = new ChannelWriter(Paths.get(args[1]),ChannelWriter.DEFAULT_BUFFER_SIZE,
+                Boolean.getBoolean("intelligence.mappedOutput"));
+            // reading input file
+            CommandReader myReader = new CommandReader(Paths.get(args[0]),
+                    Boolean.getBoolean("intelligence.mappedInput"))){
+            // create boss of the tree
+            String bossName = myReader.nextName();
+            float bossGMS = myReader.nextFloat();
+            // the events of the changes are written as text lines to the output file
+            FamilyListener log = new FamilyLogFormatter(outputStream);
+            t.addNewMember(bossName,bossGMS,log);
+            if(Metrics.ENABLED){
+                try{
+                    Metrics.register();
+                }
+                catch(JMException e){
+                    System.err.println("Metrics are not exposed over JMX: " + e);
+                }
             }
-            // take the operation name
-            String operationName = myReader.next();
-            // if operation is member_ın, add node to the tree, and write to the file
-            if(operationName.equals("MEMBER_IN")){
-                String memberName = myReader.next();
-                float memberGMS = myReader.nextFloat();
-                t.addNewMember(memberName,memberGMS,outputStream);
-            }
-            // if operation is intel_target, find the joint parent and write to the file
-            else if(operationName.equals("INTEL_TARGET")){
-                Node unionParent = findParent(myReader.next(),myReader.nextFloat(),myReader.next(),myReader.nextFloat(),t.boss);
-                outputStream.write(("Target Analysis Result: "+ unionParent.name + " " + String.format("%.3f", unionParent.GMS)+ "\n"));
-                outputStream.flush();
-            //if operation is member_out, remove the node from tree, write to the file
-            }
-            else if(operationName.equals("MEMBER_OUT")){
-                String memberName = myReader.next();
-                float memberGMS = myReader.nextFloat();
-                t.deleteMember(memberName,memberGMS,outputStream);
-
+            if(Boolean.getBoolean("intelligence.batch")){
+                // answer the queries between two mutations in parallel
+                new BatchExecutor(t,ForkJoinPool.commonPool()).execute(myReader,outputStream);
             }
-            // if operation is intel_rank, find the all nodes with same rank, and write to the file
-            else if(operationName.equals("INTEL_RANK")){
-                String memberName = myReader.next();
-                float memberGMS = myReader.nextFloat();
+            else{
+                // repeated queries between two mutations are answered from the cache if it is switched on
+                int cacheSize = Integer.getInteger("intelligence.cacheSize",0);
+                QueryCache cache = cacheSize > 0 ? new QueryCache(cacheSize) : null;
+                // read the file, taking the operation name
+                int operation;
+                while((operation = myReader.nextOpcode()) != CommandReader.END){
+                    long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                    // if operation is member_ın, add node to the tree, and write to the file
+                    if(operation == CommandReader.MEMBER_IN){
+                        String memberName = myReader.nextName();
+                        float memberGMS = myReader.nextFloat();
+                        t.addNewMember(memberName,memberGMS,log);
+                    }
+                    // if operation is intel_target, find the joint parent and write to the file
+                    else if(operation == CommandReader.INTEL_TARGET){
+                        String n1 = myReader.nextName();
+                        float g1 = myReader.nextFloat();
+                        String n2 = myReader.nextName();
+                        float g2 = myReader.nextFloat();
+                        outputStream.write(cache != null ? cache.targetAnalysis(n1,g1,n2,g2) : targetAnalysis(n1,g1,n2,g2));
+                    //if operation is member_out, remove the node from tree, write to the file
+                    }
+                    else if(operation == CommandReader.MEMBER_OUT){
+                        String memberName = myReader.nextName();
+                        float memberGMS = myReader.nextFloat();
+                        t.deleteMember(memberName,memberGMS,log);
 
-                int rank = findTheRank(memberName,memberGMS);
-                outputStream.write("Rank Analysis Result:");
-                findSameRank(rank,outputStream);
-                outputStream.flush();
-                outputStream.write("\n" );
-                outputStream.flush();
-            // if operation is intel_divide, find the maximum independent nodes in the tree.
-            }
-            else if(operationName.equals("INTEL_DIVIDE")){
-                outputStream.write("Division Analysis Result: " + division(boss) + "\n");
-                outputStream.flush();
+                    }
+                    // if operation is intel_rank, find the all nodes with same rank, and write to the file
+                    else if(operation == CommandReader.INTEL_RANK){
+                        String memberName = myReader.nextName();
+                        float memberGMS = myReader.nextFloat();
+                        outputStream.write(cache != null ? cache.rankAnalysis(memberName,memberGMS) : rankAnalysis(memberName,memberGMS));
+                    // if operation is intel_divide, find the maximum independent nodes in the tree.
+                    }
+                    else if(operation == CommandReader.INTEL_DIVIDE){
+                        outputStream.write(divisionAnalysis());
+                    }
+                    if(Metrics.ENABLED){
+                        Metrics.command(operation,System.nanoTime() - start);
+                    }
+                }
+                if(cache != null){
+                    System.err.println("Query cache: " + cache);
+                }
             }
         }
-
-        outputStream.close();
+        if(Metrics.ENABLED){
+            System.err.println(Metrics.toJson());
+        }
 
 
 
@@ -0,0 +1,569 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+/**
+ * The MappedIntelligence class is a family tree with the same operations as Intelligence whose members live in
+ * memory-mapped files instead of the Java heap. The tree file holds a header and fixed-size member records which
+ * point to each other by slot number, and the names file holds the names of the members. Opening existing files
+ * gives back the tree as it was left, without replaying the command log.
+ *
+ * The files are up to date after force or close. Names of deleted members are not reclaimed from the names file.
+ * A single mapping limits the tree file to about 76 million members and the names file to 2 GB.
+ *
+ * Unlike Intelligence, a record holds one member and there are no tied members, so adding a member with a GMS
+ * which is already in the family is refused with an IllegalArgumentException instead of changing the results.
+ */
+public class MappedIntelligence implements Closeable {
+    // slot used for "no member"
+    public static final int NIL = -1;
+    // first bytes of a tree file
+    private static final int MAGIC = 0x41564c54;
+    // version of the file layout
+    private static final int VERSION = 1;
+    // header: magic, version, boss, used slots, first free slot, member count, end of names file
+    private static final int HEADER_SIZE = 32;
+    private static final int BOSS_OFFSET = 8;
+    private static final int USED_OFFSET = 12;
+    private static final int FREE_OFFSET = 16;
+    private static final int COUNT_OFFSET = 20;
+    private static final int NAMES_END_OFFSET = 24;
+    // record: GMS, left, right, height, with member, without member, name offset
+    private static final int RECORD_SIZE = 28;
+    private static final int GMS = 0;
+    private static final int LEFT = 4;
+    private static final int RIGHT = 8;
+    private static final int HEIGHT = 12;
+    private static final int WITH_MEMBER = 16;
+    private static final int WITHOUT_MEMBER = 20;
+    private static final int NAME = 24;
+    // number of records the tree file is created with
+    private static final int INITIAL_CAPACITY = 1024;
+    // channel of the tree file
+    private final FileChannel treeChannel;
+    // channel of the names file
+    private final FileChannel namesChannel;
+    // mapped tree file
+    private MappedByteBuffer tree;
+    // mapped names file
+    private MappedByteBuffer names;
+    /**
+     * Opens the family tree kept in the given files, creating an empty family tree if the tree file is empty or
+     * does not exist.
+     *
+     * @param treeFile The path of the tree file.
+     * @param namesFile The path of the names file.
+     * @throws IOException If the files can not be opened or the tree file is not a family tree.
+     */
+    public MappedIntelligence(Path treeFile,Path namesFile) throws IOException {
+        treeChannel = FileChannel.open(treeFile,StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE);
+        namesChannel = FileChannel.open(namesFile,StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE);
+        if(treeChannel.size() == 0){
+            tree = treeChannel.map(FileChannel.MapMode.READ_WRITE,0,HEADER_SIZE + (long) INITIAL_CAPACITY * RECORD_SIZE);
+            names = namesChannel.map(FileChannel.MapMode.READ_WRITE,0,INITIAL_CAPACITY * 16L);
+            tree.putInt(0,MAGIC);
+            tree.putInt(4,VERSION);
+            tree.putInt(BOSS_OFFSET,NIL);
+            tree.putInt(USED_OFFSET,0);
+            tree.putInt(FREE_OFFSET,NIL);
+            tree.putInt(COUNT_OFFSET,0);
+            tree.putLong(NAMES_END_OFFSET,0);
+        }
+        else{
+            tree = treeChannel.map(FileChannel.MapMode.READ_WRITE,0,treeChannel.size());
+            if(tree.capacity() < HEADER_SIZE || tree.getInt(0) != MAGIC){
+                throw new IOException("Not a family tree file: " + treeFile);
+            }
+            if(tree.getInt(4) != VERSION){
+                throw new IOException("Unsupported family tree file version: " + tree.getInt(4));
+            }
+            names = namesChannel.map(FileChannel.MapMode.READ_WRITE,0,
+                    Math.max(namesChannel.size(),tree.getLong(NAMES_END_OFFSET)));
+        }
+    }
+    /**
+     * Adds a new member to the family tree.
+     *
+     * @param name The name of the added member
+     * @param number The GMS of the added member
+     * @param file The Writer object to log the operation.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     * @throws IllegalArgumentException If a member with the GMS is already in the family.
+     */
+    public void addNewMember(String name,float number,Writer file) throws IOException {
+        // a slot holds one member, so a tie is refused before anything is logged
+        if(search(number) != NIL){
+            throw new IllegalArgumentException("A member with GMS " + number + " is already in the family");
+        }
+        tree.putInt(BOSS_OFFSET,addNewMember(name,number,boss(),file));
+    }
+    /**
+     * Recursive helper method to add a new member to the family tree.
+     *
+     * @param name The name of the member to be added.
+     * @param number The GMS of the member to be added.
+     * @param node The current slot being processed.
+     * @param file The Writer object to log the operation.
+     * @return The slot on top of the subtree after adding the new member.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private int addNewMember(String name,float number,int node,Writer file) throws IOException {
+        // if node is empty, create new member
+        if(node == NIL){
+            return allocate(name,number);
+        }
+        if(number > gmsOf(node)){
+            file.write(nameOf(node) + " welcomed " + name + "\n");
+            int son = addNewMember(name,number,get(node,RIGHT),file);
+            set(node,RIGHT,son);
+        }
+        else if(number < gmsOf(node)){
+            file.write(nameOf(node) + " welcomed " + name + "\n");
+            int son = addNewMember(name,number,get(node,LEFT),file);
+            set(node,LEFT,son);
+        }
+        return balance(node);
+    }
+    /**
+     * Deletes a member from the family tree.
+     *
+     * @param name The name of the member to be deleted.
+     * @param number The GMS of the member to be deleted.
+     * @param file The Writer object to log the operation.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void deleteMember(String name,float number,Writer file) throws IOException {
+        tree.putInt(BOSS_OFFSET,deleteMember(number,boss(),file,true));
+    }
+    /**
+     * Recursive helper method to delete a member from the family tree.
+     *
+     * @param number The GMS of the member to be deleted.
+     * @param node The current slot being processed.
+     * @param file The Writer object to log the operation.
+     * @param m A boolean flag indicating whether to log the operation or not.
+     * @return The slot on top of the subtree after deleting the member.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private int deleteMember(float number,int node,Writer file,boolean m) throws IOException {
+        if(node == NIL){
+            return NIL;
+        }
+        if(number > gmsOf(node)){
+            set(node,RIGHT,deleteMember(number,get(node,RIGHT),file,m));
+        }
+        else if(number < gmsOf(node)){
+            set(node,LEFT,deleteMember(number,get(node,LEFT),file,m));
+        }
+        else if(get(node,LEFT) != NIL && get(node,RIGHT) != NIL){
+            // replace the member with the smallest member on its right
+            int successor = get(node,RIGHT);
+            while(get(successor,LEFT) != NIL){
+                successor = get(successor,LEFT);
+            }
+            file.write(nameOf(node) + " left the family, replaced by " + nameOf(successor) + "\n");
+            tree.putFloat(record(node) + GMS,gmsOf(successor));
+            set(node,NAME,get(successor,NAME));
+            set(node,RIGHT,deleteMember(gmsOf(node),get(node,RIGHT),file,false));
+        }
+        else{
+            int child = get(node,LEFT) != NIL ? get(node,LEFT) : get(node,RIGHT);
+            if(m){
+                file.write(nameOf(node) + " left the family, replaced by "
+                        + (child == NIL ? "nobody" : nameOf(child)) + "\n");
+            }
+            free(node);
+            return child == NIL ? NIL : balance(child);
+        }
+        return balance(node);
+    }
+    /**
+     * Searches for a member in the family tree based on GMS and returns the height of the found member.
+     *
+     * @param name The name of the member to search for.
+     * @param number The GMS of the member to search for.
+     * @return The height of the found member, or -1 if there is no such member.
+     */
+    public int searchMember2(String name,float number){
+        int node = search(number);
+        return node == NIL ? -1 : get(node,HEIGHT);
+    }
+    /**
+     * Searches for the slot of a member based on GMS.
+     *
+     * @param number The GMS of the member to search for.
+     * @return The slot of the member, or NIL if there is no such member.
+     */
+    public int search(float number){
+        int current = boss();
+        while(current != NIL){
+            float value = gmsOf(current);
+            if(number > value){
+                current = get(current,RIGHT);
+            }
+            else if(number < value){
+                current = get(current,LEFT);
+            }
+            else{
+                return current;
+            }
+        }
+        return NIL;
+    }
+    /**
+     * Finds the rank of a member, which is the number of superiors between the boss and the member.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The rank of the member, or the length of the searched path if there is no such member.
+     */
+    public int findTheRank(String name,float number){
+        int i = 0;
+        int current = boss();
+        while(current != NIL){
+            float value = gmsOf(current);
+            if(number > value){
+                i++;
+                current = get(current,RIGHT);
+            }
+            else if(number < value){
+                i++;
+                current = get(current,LEFT);
+            }
+            else{
+                return i;
+            }
+        }
+        return i;
+    }
+    /**
+     * Finds members in the family tree with the given rank and logs them in the output file.
+     *
+     * @param rank The rank to search for.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void findSameRank(int rank,Writer file) throws IOException {
+        findSameRank(boss(),0,rank,file);
+    }
+    /**
+     * Recursive helper method for findSameRank.
+     *
+     * @param node The current slot being processed.
+     * @param root The rank of the current slot.
+     * @param rank The rank to search for.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    private void findSameRank(int node,int root,int rank,Writer file) throws IOException {
+        // the deepest rank under the slot is root + its height, a subtree which does not reach rank is skipped
+        if(node == NIL || root > rank || root + get(node,HEIGHT) < rank){
+            return;
+        }
+        if(root == rank){
+            file.write(" " + nameOf(node) + " " + String.format("%.3f",gmsOf(node)));
+            return;
+        }
+        findSameRank(get(node,LEFT),root + 1,rank,file);
+        findSameRank(get(node,RIGHT),root + 1,rank,file);
+    }
+    /**
+     * Finds the joint parent of two members based on their GMS.
+     *
+     * @param g1 The GMS of the first member.
+     * @param g2 The GMS of the second member.
+     * @return The slot of the joint parent, or NIL if the family tree is empty.
+     */
+    public int findParent(float g1,float g2){
+        int current = boss();
+        while(current != NIL){
+            float value = gmsOf(current);
+            int next;
+            if(g1 > value && g2 > value){
+                next = get(current,RIGHT);
+            }
+            else if(g1 < value && g2 < value){
+                next = get(current,LEFT);
+            }
+            else{
+                return current;
+            }
+            if(next == NIL){
+                return current;
+            }
+            current = next;
+        }
+        return NIL;
+    }
+    /**
+     * Finds the maximum number of members in the family tree such that no member is chosen together with its
+     * direct superior.
+     *
+     * @return The maximum number of independent members.
+     */
+    public int division(){
+        return divisionOf(boss());
+    }
+    /**
+     * Returns the name of the member in a slot.
+     *
+     * @param node The slot of the member.
+     * @return The name of the member.
+     */
+    public String nameOf(int node){
+        int offset = get(node,NAME);
+        int length = names.getInt(offset);
+        byte[] bytes = new byte[length];
+        names.get(offset + 4,bytes);
+        return new String(bytes,StandardCharsets.UTF_8);
+    }
+    /**
+     * Returns the GMS of the member in a slot.
+     *
+     * @param node The slot of the member.
+     * @return The GMS of the member.
+     */
+    public float gmsOf(int node){
+        return tree.getFloat(record(node) + GMS);
+    }
+    /**
+     * Returns the slot of the boss.
+     *
+     * @return The slot of the boss, or NIL if the family tree is empty.
+     */
+    public int boss(){
+        return tree.getInt(BOSS_OFFSET);
+    }
+    /**
+     * Returns the number of members in the family tree.
+     *
+     * @return The number of members.
+     */
+    public int size(){
+        return tree.getInt(COUNT_OFFSET);
+    }
+    /**
+     * Checks if the family tree is empty.
+     *
+     * @return True if the family tree is empty, false otherwise.
+     */
+    public boolean isEmpty(){
+        return boss() == NIL;
+    }
+    /**
+     * Writes the changes of both mappings to the storage device.
+     */
+    public void force(){
+        tree.force();
+        names.force();
+    }
+    /**
+     * Writes the changes to the storage device and closes the files.
+     *
+     * @throws IOException If an I/O error occurs while closing the files.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        treeChannel.close();
+        namesChannel.close();
+    }
+    /**
+     * Balances the subtree of a slot with the same rotations as Intelligence.balance.
+     *
+     * @param node The slot to be balanced.
+     * @return The slot on top of the balanced subtree.
+     */
+    private int balance(int node){
+        update(node);
+        int difference = heightOf(get(node,LEFT)) - heightOf(get(node,RIGHT));
+        if(Math.abs(difference) <= 1){
+            return node;
+        }
+        if(difference > 1){
+            int son = get(node,LEFT);
+            // left-right rotation turns into left-left after rotating the son
+            if(heightOf(get(son,LEFT)) < heightOf(get(son,RIGHT))){
+                set(node,LEFT,rotateLeft(son));
+            }
+            return rotateRight(node);
+        }
+        int son = get(node,RIGHT);
+        // right-left rotation turns into right-right after rotating the son
+        if(heightOf(get(son,LEFT)) > heightOf(get(son,RIGHT))){
+            set(node,RIGHT,rotateRight(son));
+        }
+        return rotateLeft(node);
+    }
+    /**
+     * Rotates the left inferior of a slot up.
+     *
+     * @param node The slot to rotate down.
+     * @return The slot on top after the rotation.
+     */
+    private int rotateRight(int node){
+        int son = get(node,LEFT);
+        set(node,LEFT,get(son,RIGHT));
+        set(son,RIGHT,node);
+        update(node);
+        update(son);
+        return son;
+    }
+    /**
+     * Rotates the right inferior of a slot up.
+     *
+     * @param node The slot to rotate down.
+     * @return The slot on top after the rotation.
+     */
+    private int rotateLeft(int node){
+        int son = get(node,RIGHT);
+        set(node,RIGHT,get(son,LEFT));
+        set(son,LEFT,node);
+        update(node);
+        update(son);
+        return son;
+    }
+    /**
+     * Recomputes the height and the division values of a slot from its inferiors.
+     *
+     * @param node The slot to update.
+     */
+    private void update(int node){
+        int l = get(node,LEFT);
+        int r = get(node,RIGHT);
+        set(node,HEIGHT,Math.max(heightOf(l),heightOf(r)) + 1);
+        set(node,WITH_MEMBER,1 + (l == NIL ? 0 : get(l,WITHOUT_MEMBER)) + (r == NIL ? 0 : get(r,WITHOUT_MEMBER)));
+        set(node,WITHOUT_MEMBER,divisionOf(l) + divisionOf(r));
+    }
+    /**
+     * Returns the height of a slot.
+     *
+     * @param node The slot.
+     * @return The height of the slot, or -1 for NIL.
+     */
+    private int heightOf(int node){
+        return node == NIL ? -1 : get(node,HEIGHT);
+    }
+    /**
+     * Returns the maximum number of independent members in the subtree of a slot.
+     *
+     * @param node The slot.
+     * @return The maximum number of independent members, or 0 for NIL.
+     */
+    private int divisionOf(int node){
+        return node == NIL ? 0 : Math.max(get(node,WITH_MEMBER),get(node,WITHOUT_MEMBER));
+    }
+    /**
+     * Takes a free slot, or a new one, for a new member.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The slot of the member.
+     * @throws IOException If the files can not grow.
+     */
+    private int allocate(String name,float number) throws IOException {
+        int nameOffset = appendName(name);
+        int node = tree.getInt(FREE_OFFSET);
+        if(node != NIL){
+            tree.putInt(FREE_OFFSET,get(node,LEFT));
+        }
+        else{
+            node = tree.getInt(USED_OFFSET);
+            if(HEADER_SIZE + (long) (node + 1) * RECORD_SIZE > tree.capacity()){
+                tree = grow(treeChannel,tree,HEADER_SIZE + (long) (node + 1) * RECORD_SIZE);
+            }
+            tree.putInt(USED_OFFSET,node + 1);
+        }
+        tree.putFloat(record(node) + GMS,number);
+        set(node,LEFT,NIL);
+        set(node,RIGHT,NIL);
+        set(node,HEIGHT,0);
+        set(node,WITH_MEMBER,1);
+        set(node,WITHOUT_MEMBER,0);
+        set(node,NAME,nameOffset);
+        tree.putInt(COUNT_OFFSET,size() + 1);
+        return node;
+    }
+    /**
+     * Puts a slot on the free list.
+     *
+     * @param node The slot of the deleted member.
+     */
+    private void free(int node){
+        set(node,LEFT,tree.getInt(FREE_OFFSET));
+        tree.putInt(FREE_OFFSET,node);
+        tree.putInt(COUNT_OFFSET,size() - 1);
+    }
+    /**
+     * Appends a name to the names file.
+     *
+     * @param name The name.
+     * @return The offset of the name in the names file.
+     * @throws IOException If the names file can not grow.
+     */
+    private int appendName(String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = tree.getLong(NAMES_END_OFFSET);
+        long end = offset + 4 + bytes.length;
+        if(end > Integer.MAX_VALUE){
+            throw new IOException("Names file is full");
+        }
+        if(end > names.capacity()){
+            names = grow(namesChannel,names,end);
+        }
+        names.putInt((int) offset,bytes.length);
+        names.put((int) offset + 4,bytes);
+        tree.putLong(NAMES_END_OFFSET,end);
+        return (int) offset;
+    }
+    /**
+     * Maps a file again with at least the given size, doubling the current size.
+     *
+     * @param channel The channel of the file.
+     * @param current The current mapping of the file.
+     * @param needed The number of bytes the new mapping must have.
+     * @return The new mapping.
+     * @throws IOException If the file can not be mapped.
+     */
+    private static MappedByteBuffer grow(FileChannel channel,MappedByteBuffer current,long needed) throws IOException {
+        long size = Math.min(Math.max(needed,current.capacity() * 2L),Integer.MAX_VALUE);
+        if(size < needed){
+            throw new IOException("Family tree file is full");
+        }
+        current.force();
+        return channel.map(FileChannel.MapMode.READ_WRITE,0,size);
+    }
+    /**
+     * Returns the position of the record of a slot in the tree file.
+     *
+     * @param node The slot.
+     * @return The position of the record.
+     */
+    private static int record(int node){
+        return HEADER_SIZE + node * RECORD_SIZE;
+    }
+    /**
+     * Reads an int field of a record.
+     *
+     * @param node The slot of the record.
+     * @param field The offset of the field in the record.
+     * @return The value of the field.
+     */
+    private int get(int node,int field){
+        return tree.getInt(record(node) + field);
+    }
+    /**
+     * Writes an int field of a record.
+     *
+     * @param node The slot of the record.
+     * @param field The offset of the field in the record.
+     * @param value The value of the field.
+     */
+    private void set(int node,int field,int value){
+        tree.putInt(record(node) + field,value);
+    }
+}
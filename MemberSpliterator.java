@@ -0,0 +1,166 @@
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+/**
+ * The MemberSpliterator class walks the members of a family tree in GMS order, limited to a closed GMS range. It
+ * holds no list of the members: before the walk starts the remaining members are a head member followed by one
+ * subtree, and trySplit hands out the head and the left half of the subtree, so a parallel stream splits the tree at
+ * its subtree boundaries. Once the walk has started the path to the next member is kept on a stack, so the walk
+ * visits O(log n + k) nodes for k members in the range.
+ *
+ * The family tree must not be changed while it is walked.
+ */
+public class MemberSpliterator implements Spliterator<Intelligence.Node> {
+    // order of the members, the same as the order of the family tree
+    private static final Comparator<Intelligence.Node> GMS_ORDER = (a,b) -> a.GMS < b.GMS ? -1 : a.GMS > b.GMS ? 1 : 0;
+    // smallest GMS in the range
+    private final float from;
+    // largest GMS in the range
+    private final float to;
+    // member which comes before the subtree, or null
+    private Intelligence.Node head;
+    // subtree whose members in the range come after head
+    private Intelligence.Node subtree;
+    // members whose own turn and right subtree are still to come, the next member on top, or null before the walk
+    private ArrayDeque<Intelligence.Node> path;
+    /**
+     * Creates a walk over the members of a family tree with GMS in [from, to].
+     *
+     * @param boss The root node of the family tree.
+     * @param from The smallest GMS in the range.
+     * @param to The largest GMS in the range.
+     */
+    public MemberSpliterator(Intelligence.Node boss,float from,float to){
+        this(null,boss,from,to);
+    }
+    /**
+     * Creates a walk over a head member followed by the members of a subtree.
+     *
+     * @param head The member which comes first, or null.
+     * @param subtree The root node of the subtree.
+     * @param from The smallest GMS in the range.
+     * @param to The largest GMS in the range.
+     */
+    private MemberSpliterator(Intelligence.Node head,Intelligence.Node subtree,float from,float to){
+        this.head = head;
+        this.subtree = subtree;
+        this.from = from;
+        this.to = to;
+    }
+    @Override
+    public boolean tryAdvance(Consumer<? super Intelligence.Node> action){
+        Intelligence.Node next = next();
+        if(next == null){
+            return false;
+        }
+        action.accept(next);
+        return true;
+    }
+    @Override
+    public void forEachRemaining(Consumer<? super Intelligence.Node> action){
+        Intelligence.Node next;
+        while((next = next()) != null){
+            action.accept(next);
+        }
+    }
+    /**
+     * Splits off the head member and the left half of the subtree. The walk keeps the root of the subtree and its
+     * right half.
+     *
+     * @return The walk over the first members, or null if the walk has started or there is nothing to split.
+     */
+    @Override
+    public Spliterator<Intelligence.Node> trySplit(){
+        if(path != null){
+            return null;
+        }
+        Intelligence.Node root = rootInRange(subtree);
+        if(root == null){
+            subtree = null;
+            return null;
+        }
+        MemberSpliterator prefix = new MemberSpliterator(head,root.leftMember,from,to);
+        head = root;
+        subtree = root.rightMember;
+        return prefix;
+    }
+    /**
+     * Estimates the remaining members from the subtree size; the range is not taken into account.
+     *
+     * @return The number of members of the subtree plus the head member, or of the subtrees still on the path.
+     */
+    @Override
+    public long estimateSize(){
+        long members = head == null ? 0 : 1;
+        if(path == null){
+            return members + Intelligence.size(subtree);
+        }
+        for(Intelligence.Node t : path){
+            members += 1 + Intelligence.size(t.rightMember);
+        }
+        return members;
+    }
+    @Override
+    public int characteristics(){
+        return ORDERED | SORTED | DISTINCT | NONNULL;
+    }
+    @Override
+    public Comparator<? super Intelligence.Node> getComparator(){
+        return GMS_ORDER;
+    }
+    /**
+     * Moves to the next member in the range.
+     *
+     * @return The next member, or null if the walk is over.
+     */
+    private Intelligence.Node next(){
+        if(path == null){
+            path = new ArrayDeque<>();
+            pushLeftSide(subtree);
+            subtree = null;
+            if(head != null){
+                Intelligence.Node first = head;
+                head = null;
+                return first;
+            }
+        }
+        Intelligence.Node next = path.pollFirst();
+        if(next != null){
+            pushLeftSide(next.rightMember);
+        }
+        return next;
+    }
+    /**
+     * Pushes the members in the range on the way from a node down to the smallest member in the range under it.
+     * Nodes outside the range are passed without being pushed, together with the side of them which is outside too.
+     *
+     * @param t The node to start from.
+     */
+    private void pushLeftSide(Intelligence.Node t){
+        while(t != null){
+            if(t.GMS < from){
+                t = t.rightMember;
+            }
+            else if(t.GMS > to){
+                t = t.leftMember;
+            }
+            else{
+                path.push(t);
+                t = t.leftMember;
+            }
+        }
+    }
+    /**
+     * Finds the highest node of a subtree with GMS in the range. All members in the range are under it.
+     *
+     * @param t The root node of the subtree.
+     * @return The highest node in the range, or null if there is none.
+     */
+    private Intelligence.Node rootInRange(Intelligence.Node t){
+        while(t != null && (t.GMS < from || t.GMS > to)){
+            t = t.GMS < from ? t.rightMember : t.leftMember;
+        }
+        return t;
+    }
+}
@@ -0,0 +1,235 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+/**
+ * The Metrics class counts what happens on the hot paths of the family tree: rotations by type, the depth of each
+ * descent, the bytes and flushes of the output log, and the latency of each command in main and BatchExecutor. Counting
+ * is switched on with -Dintelligence.metrics=true. ENABLED is read from the property when the class is loaded, so it is
+ * not a compile-time constant and javac keeps the checks; the JIT compiler treats the static final field as a constant
+ * and removes the guarded code from compiled methods when it is off. The counters are striped LongAdders, so threads do
+ * not fight over them.
+ */
+public final class Metrics {
+    // true if the metrics are collected
+    public static final boolean ENABLED = Boolean.getBoolean("intelligence.metrics");
+    // operations whose descent depth is counted
+    public static final int ADD = 0;
+    public static final int DELETE = 1;
+    public static final int SEARCH = 2;
+    private static final String[] DESCENTS = {"add","delete","search"};
+    // names of the rotation types, indexed by Intelligence.indicateType - 1
+    private static final String[] ROTATIONS = {"leftLeft","leftRight","rightLeft","rightRight"};
+    // names of the commands, indexed by their CommandReader opcode
+    private static final String[] COMMANDS = {"UNKNOWN","MEMBER_IN","MEMBER_OUT","INTEL_TARGET","INTEL_RANK","INTEL_DIVIDE"};
+    // number of buckets of a histogram
+    private static final int BUCKETS = 64;
+    // rotations by type
+    private static final LongAdder[] rotations = adders(ROTATIONS.length);
+    // descent depths by operation, one bucket per depth
+    private static final LongAdder[][] depths = histograms(DESCENTS.length);
+    // command latencies by opcode, bucket i counts latencies below 2^i nanoseconds
+    private static final LongAdder[][] latencies = histograms(COMMANDS.length);
+    // bytes handed to the output file
+    private static final LongAdder outputBytes = new LongAdder();
+    // writes of the output buffer to the file
+    private static final LongAdder outputWrites = new LongAdder();
+    // flush calls on the output writer
+    private static final LongAdder outputFlushes = new LongAdder();
+
+    private Metrics(){
+    }
+    /**
+     * Counts a rotation.
+     *
+     * @param type The rotation type as returned by Intelligence.indicateType.
+     */
+    public static void rotation(int type){
+        rotations[type - 1].increment();
+    }
+    /**
+     * Counts the depth a descent reached.
+     *
+     * @param operation ADD, DELETE or SEARCH.
+     * @param depth The number of nodes passed before the descent ended.
+     */
+    public static void descent(int operation,int depth){
+        depths[operation][Math.min(depth,BUCKETS - 1)].increment();
+    }
+    /**
+     * Counts the latency of a command.
+     *
+     * @param opcode The CommandReader opcode of the command.
+     * @param nanos The time the command took.
+     */
+    public static void command(int opcode,long nanos){
+        latencies[opcode][Math.min(64 - Long.numberOfLeadingZeros(Math.max(nanos,0)),BUCKETS - 1)].increment();
+    }
+    /**
+     * Counts a write of the output buffer to the file.
+     *
+     * @param bytes The number of bytes written.
+     */
+    public static void outputWrite(long bytes){
+        outputBytes.add(bytes);
+        outputWrites.increment();
+    }
+    /**
+     * Counts a flush call on the output writer.
+     */
+    public static void outputFlush(){
+        outputFlushes.increment();
+    }
+    /**
+     * Sets every counter back to zero.
+     */
+    public static void reset(){
+        for(LongAdder adder : rotations){
+            adder.reset();
+        }
+        for(LongAdder[] histogram : depths){
+            for(LongAdder adder : histogram){
+                adder.reset();
+            }
+        }
+        for(LongAdder[] histogram : latencies){
+            for(LongAdder adder : histogram){
+                adder.reset();
+            }
+        }
+        outputBytes.reset();
+        outputWrites.reset();
+        outputFlushes.reset();
+    }
+    /**
+     * Writes the counters as a JSON object. Histograms only list their non-empty buckets; a depth bucket is keyed
+     * by the depth and a latency bucket by its exclusive upper bound in nanoseconds.
+     *
+     * @return The counters as JSON.
+     */
+    public static String toJson(){
+        StringBuilder json = new StringBuilder("{\"rotations\":{");
+        for(int i = 0;i < ROTATIONS.length;i++){
+            json.append(i == 0 ? "" : ",").append('"').append(ROTATIONS[i]).append("\":").append(rotations[i].sum());
+        }
+        json.append("},\"depth\":{");
+        for(int i = 0;i < DESCENTS.length;i++){
+            json.append(i == 0 ? "" : ",").append('"').append(DESCENTS[i]).append("\":");
+            appendHistogram(json,depths[i],false);
+        }
+        json.append("},\"output\":{\"bytes\":").append(outputBytes.sum())
+                .append(",\"writes\":").append(outputWrites.sum())
+                .append(",\"flushes\":").append(outputFlushes.sum());
+        json.append("},\"latencyNanos\":{");
+        for(int i = 0;i < COMMANDS.length;i++){
+            json.append(i == 0 ? "" : ",").append('"').append(COMMANDS[i]).append("\":");
+            appendHistogram(json,latencies[i],true);
+        }
+        return json.append("}}").toString();
+    }
+    /**
+     * Registers the counters as an MXBean named Intelligence:type=Metrics.
+     *
+     * @throws JMException If the bean can not be registered.
+     */
+    public static void register() throws JMException {
+        ObjectName name = new ObjectName("Intelligence:type=Metrics");
+        if(!ManagementFactory.getPlatformMBeanServer().isRegistered(name)){
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new View(),name);
+        }
+    }
+    /**
+     * Writes the non-empty buckets of a histogram as a JSON object.
+     *
+     * @param json The JSON being built.
+     * @param histogram The buckets.
+     * @param powers True if bucket i is keyed by 2^i instead of i.
+     */
+    private static void appendHistogram(StringBuilder json,LongAdder[] histogram,boolean powers){
+        json.append('{');
+        boolean first = true;
+        for(int i = 0;i < histogram.length;i++){
+            long count = histogram[i].sum();
+            if(count != 0){
+                json.append(first ? "" : ",").append('"').append(powers ? Long.toUnsignedString(1L << i) : String.valueOf(i))
+                        .append("\":").append(count);
+                first = false;
+            }
+        }
+        json.append('}');
+    }
+    /**
+     * Creates an array of counters.
+     *
+     * @param n The number of counters.
+     * @return The counters.
+     */
+    private static LongAdder[] adders(int n){
+        LongAdder[] adders = new LongAdder[n];
+        for(int i = 0;i < n;i++){
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+    /**
+     * Creates an array of histograms.
+     *
+     * @param n The number of histograms.
+     * @return The histograms.
+     */
+    private static LongAdder[][] histograms(int n){
+        LongAdder[][] histograms = new LongAdder[n][];
+        for(int i = 0;i < n;i++){
+            histograms[i] = adders(BUCKETS);
+        }
+        return histograms;
+    }
+
+    /**
+     * The management interface of the counters.
+     */
+    public interface StatisticsMXBean {
+        long getLeftLeftRotations();
+        long getLeftRightRotations();
+        long getRightLeftRotations();
+        long getRightRightRotations();
+        long getOutputBytes();
+        long getOutputWrites();
+        long getOutputFlushes();
+        String getJson();
+        void reset();
+    }
+
+    /**
+     * The bean registered by register, reading the current counters.
+     */
+    private static final class View implements StatisticsMXBean {
+        public long getLeftLeftRotations(){
+            return rotations[0].sum();
+        }
+        public long getLeftRightRotations(){
+            return rotations[1].sum();
+        }
+        public long getRightLeftRotations(){
+            return rotations[2].sum();
+        }
+        public long getRightRightRotations(){
+            return rotations[3].sum();
+        }
+        public long getOutputBytes(){
+            return outputBytes.sum();
+        }
+        public long getOutputWrites(){
+            return outputWrites.sum();
+        }
+        public long getOutputFlushes(){
+            return outputFlushes.sum();
+        }
+        public String getJson(){
+            return toJson();
+        }
+        public void reset(){
+            Metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * The NameIndex class finds the node of a member by name in O(1). It is an open-addressing hash table with linear
+ * probing from names to nodes; a node holding tied members is in the index once for each of their names, with the
+ * position of the name in the ties of the node, so a tied member is removed without searching the ties. Removed
+ * entries are filled by shifting the following entries of the probe run back, so no deleted markers are left behind
+ * and lookups stay short after many deletions.
+ *
+ * Names are expected to be unique. If two members have the same name, the index points to the one put last.
+ */
+public class NameIndex {
+    // smallest number of slots
+    private static final int MIN_CAPACITY = 16;
+    // names in the index, null for an empty slot
+    private String[] names;
+    // nodes of the names
+    private Intelligence.Node[] nodes;
+    // positions of the names in the ties of their nodes, -1 for the member of the node
+    private int[] positions;
+    // mixed hash codes of the names, so most mismatches are found without comparing strings
+    private int[] hashes;
+    // number of names in the index
+    private int size;
+    /**
+     * Creates an empty index.
+     */
+    public NameIndex(){
+        names = new String[MIN_CAPACITY];
+        nodes = new Intelligence.Node[MIN_CAPACITY];
+        positions = new int[MIN_CAPACITY];
+        hashes = new int[MIN_CAPACITY];
+    }
+    /**
+     * Finds the node of a member.
+     *
+     * @param name The name of the member.
+     * @return The node, or null if no member has the name.
+     */
+    public Intelligence.Node get(String name){
+        int hash = hash(name);
+        int mask = names.length - 1;
+        for(int i = hash & mask;names[i] != null;i = (i + 1) & mask){
+            if(hashes[i] == hash && names[i].equals(name)){
+                return nodes[i];
+            }
+        }
+        return null;
+    }
+    /**
+     * Finds the position of a tied member in the ties of its node.
+     *
+     * @param name The name of the member.
+     * @param node The node holding the member.
+     * @return The position in the ties of the node, or -1 if the index does not point to the node for the name or
+     * the name is the member of the node.
+     */
+    public int position(String name,Intelligence.Node node){
+        int hash = hash(name);
+        int mask = names.length - 1;
+        for(int i = hash & mask;names[i] != null;i = (i + 1) & mask){
+            if(hashes[i] == hash && names[i].equals(name)){
+                return nodes[i] == node ? positions[i] : -1;
+            }
+        }
+        return -1;
+    }
+    /**
+     * Puts a member into the index, replacing the node which had the name before.
+     *
+     * @param name The name of the member.
+     * @param node The node holding the member.
+     * @param position The position of the name in the ties of the node, or -1 for the member of the node.
+     */
+    public void put(String name,Intelligence.Node node,int position){
+        int hash = hash(name);
+        int mask = names.length - 1;
+        int i = hash & mask;
+        while(names[i] != null){
+            if(hashes[i] == hash && names[i].equals(name)){
+                nodes[i] = node;
+                positions[i] = position;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        names[i] = name;
+        nodes[i] = node;
+        positions[i] = position;
+        hashes[i] = hash;
+        size++;
+        // at most half of the slots are used, so probe runs stay short
+        if(size * 2 > names.length){
+            resize(names.length * 2);
+        }
+    }
+    /**
+     * Changes the position of a tied member, if the index still points to the given node for its name.
+     *
+     * @param name The name of the member.
+     * @param node The node holding the member.
+     * @param position The new position of the name in the ties of the node.
+     */
+    public void move(String name,Intelligence.Node node,int position){
+        int hash = hash(name);
+        int mask = names.length - 1;
+        for(int i = hash & mask;names[i] != null;i = (i + 1) & mask){
+            if(hashes[i] == hash && names[i].equals(name)){
+                if(nodes[i] == node){
+                    positions[i] = position;
+                }
+                return;
+            }
+        }
+    }
+    /**
+     * Removes a member from the index, if the index still points to the given node for its name.
+     *
+     * @param name The name of the member.
+     * @param node The node holding the member.
+     * @return True if the member was removed.
+     */
+    public boolean remove(String name,Intelligence.Node node){
+        int hash = hash(name);
+        int mask = names.length - 1;
+        for(int i = hash & mask;names[i] != null;i = (i + 1) & mask){
+            if(hashes[i] == hash && names[i].equals(name)){
+                if(nodes[i] != node){
+                    return false;
+                }
+                delete(i);
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Removes every name.
+     */
+    public void clear(){
+        names = new String[MIN_CAPACITY];
+        nodes = new Intelligence.Node[MIN_CAPACITY];
+        positions = new int[MIN_CAPACITY];
+        hashes = new int[MIN_CAPACITY];
+        size = 0;
+    }
+    /**
+     * Returns the number of names in the index.
+     *
+     * @return The number of names.
+     */
+    public int size(){
+        return size;
+    }
+    /**
+     * Empties a slot and moves back the entries after it which can not be found any more otherwise.
+     *
+     * @param i The slot to empty.
+     */
+    private void delete(int i){
+        int mask = names.length - 1;
+        int gap = i;
+        for(int j = (i + 1) & mask;names[j] != null;j = (j + 1) & mask){
+            int home = hashes[j] & mask;
+            // the entry may move into the gap if its home slot is not between the gap and its slot
+            if(((j - home) & mask) >= ((j - gap) & mask)){
+                names[gap] = names[j];
+                nodes[gap] = nodes[j];
+                positions[gap] = positions[j];
+                hashes[gap] = hashes[j];
+                gap = j;
+            }
+        }
+        names[gap] = null;
+        nodes[gap] = null;
+        positions[gap] = 0;
+        hashes[gap] = 0;
+        size--;
+    }
+    /**
+     * Moves the entries into a table with a new number of slots.
+     *
+     * @param capacity The new number of slots, a power of two.
+     */
+    private void resize(int capacity){
+        String[] oldNames = names;
+        Intelligence.Node[] oldNodes = nodes;
+        int[] oldPositions = positions;
+        int[] oldHashes = hashes;
+        names = new String[capacity];
+        nodes = new Intelligence.Node[capacity];
+        positions = new int[capacity];
+        hashes = new int[capacity];
+        int mask = capacity - 1;
+        for(int j = 0;j < oldNames.length;j++){
+            if(oldNames[j] != null){
+                int i = oldHashes[j] & mask;
+                while(names[i] != null){
+                    i = (i + 1) & mask;
+                }
+                names[i] = oldNames[j];
+                nodes[i] = oldNodes[j];
+                positions[i] = oldPositions[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+    /**
+     * Spreads the bits of the hash code of a name, so names with similar codes do not fill one probe run.
+     *
+     * @param name The name.
+     * @return The mixed hash code.
+     */
+    private static int hash(String name){
+        int h = name.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
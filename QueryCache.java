@@ -0,0 +1,162 @@
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+/**
+ * The QueryCache class keeps the result lines of recent INTEL_TARGET and INTEL_RANK commands, so a query repeated
+ * while the family tree does not change is answered without walking the tree again. It holds at most a fixed number
+ * of lines and drops the least recently used one when it is full.
+ *
+ * Every line is valid for one epoch of the family tree. When Intelligence.epoch has moved on, all lines are stale and
+ * the cache is emptied before the next lookup. A target query is keyed by its two GMS values; a rank query is keyed
+ * by the rank it asks for, so different members at the same rank share one line.
+ */
+public class QueryCache {
+    // result lines by query, in access order
+    private final LinkedHashMap<Object,String> lines;
+    // most lines kept
+    private final int capacity;
+    // epoch the lines were computed at
+    private long epoch;
+    // lookups answered from the cache
+    private long hits;
+    // lookups which computed the line
+    private long misses;
+    // lines dropped to make room
+    private long evictions;
+    // times the cache was emptied because the tree changed
+    private long invalidations;
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity The most result lines kept.
+     */
+    public QueryCache(int capacity){
+        if(capacity <= 0){
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.epoch = Intelligence.epoch();
+        this.lines = new LinkedHashMap<Object,String>(16,0.75f,true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object,String> eldest){
+                if(size() > QueryCache.this.capacity){
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    /**
+     * Returns the output line of an INTEL_TARGET command.
+     *
+     * @param n1 The name of the first member.
+     * @param g1 The GMS of the first member.
+     * @param n2 The name of the second member.
+     * @param g2 The GMS of the second member.
+     * @return The result line, ending with a newline.
+     */
+    public String targetAnalysis(String n1,float g1,String n2,float g2){
+        // the parent only depends on the GMS values, -0.0 and 0.0 are the same member
+        Long key = ((long) Float.floatToIntBits(g1 + 0.0f) << 32) | (Float.floatToIntBits(g2 + 0.0f) & 0xffffffffL);
+        String line = lookup(key);
+        if(line == null){
+            line = Intelligence.targetAnalysis(n1,g1,n2,g2);
+            lines.put(key,line);
+        }
+        return line;
+    }
+    /**
+     * Returns the output line of an INTEL_RANK command.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The result line, ending with a newline.
+     */
+    public String rankAnalysis(String name,float number){
+        // an Integer key never equals the Long key of a target query
+        Integer key = Intelligence.findTheRank(name,number);
+        String line = lookup(key);
+        if(line == null){
+            line = Intelligence.rankAnalysis(key);
+            lines.put(key,line);
+        }
+        return line;
+    }
+    /**
+     * Finds a cached line, emptying the cache first if the family tree changed since the lines were computed.
+     *
+     * @param key The key of the query.
+     * @return The line, or null if it is not cached.
+     */
+    private String lookup(Object key){
+        long current = Intelligence.epoch();
+        if(current != epoch){
+            if(!lines.isEmpty()){
+                lines.clear();
+                invalidations++;
+            }
+            epoch = current;
+        }
+        String line = lines.get(key);
+        if(line == null){
+            misses++;
+        }
+        else{
+            hits++;
+        }
+        return line;
+    }
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return The number of hits.
+     */
+    public long hits(){
+        return hits;
+    }
+    /**
+     * Returns the number of lookups which had to compute the line.
+     *
+     * @return The number of misses.
+     */
+    public long misses(){
+        return misses;
+    }
+    /**
+     * Returns the number of lines dropped because the cache was full.
+     *
+     * @return The number of evictions.
+     */
+    public long evictions(){
+        return evictions;
+    }
+    /**
+     * Returns the number of times the cache was emptied because the family tree changed.
+     *
+     * @return The number of invalidations.
+     */
+    public long invalidations(){
+        return invalidations;
+    }
+    /**
+     * Returns the share of lookups answered from the cache.
+     *
+     * @return The hit rate between 0 and 1, or 0 if there was no lookup.
+     */
+    public double hitRate(){
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+    /**
+     * Returns the statistics of the cache as a JSON object.
+     *
+     * @return The statistics.
+     */
+    @Override
+    public String toString(){
+        return "{\"capacity\":" + capacity + ",\"size\":" + lines.size() + ",\"hits\":" + hits + ",\"misses\":" + misses
+                + ",\"evictions\":" + evictions + ",\"invalidations\":" + invalidations + ",\"hitRate\":"
+                + String.format(Locale.ROOT,"%.4f",hitRate()) + "}";
+    }
+}
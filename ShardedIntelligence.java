@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ * The ShardedIntelligence class splits the GMS range into shards, each a ConcurrentIntelligence with its own writer
+ * thread, so members in different ranges are added and deleted in parallel. A change is routed to the shard of its
+ * GMS and applied there in the order it was submitted; the welcome and departure log is not written, since it would
+ * describe shard-local paths.
+ *
+ * Queries are answered on one logical family tree made of the shard trees. The middle non-empty shard is at the top;
+ * the shards below it hang as the left inferior of its smallest member and the shards above it as the right
+ * inferior of its largest member, each group laid out the same way. Since the shards cover increasing GMS ranges,
+ * this is a valid search tree, and ranks, joint parents and the division are computed on it from the shard trees
+ * without building it. A query first waits for the changes submitted before it, then reads one snapshot of every
+ * shard.
+ */
+public class ShardedIntelligence implements AutoCloseable {
+    // smallest GMS of each shard but the first, in increasing order
+    private final float[] bounds;
+    // family trees of the shards
+    private final ConcurrentIntelligence[] shards;
+    // writer thread of each shard
+    private final ExecutorService[] writers;
+    // changes submitted to each shard and not applied yet
+    private final AtomicLong[] pending;
+    /**
+     * Creates shards of equal width between two GMS values. Members below min go to the first shard and members
+     * above max to the last one.
+     *
+     * @param count The number of shards.
+     * @param min The smallest GMS expected.
+     * @param max The largest GMS expected.
+     */
+    public ShardedIntelligence(int count,float min,float max){
+        this(evenBounds(count,min,max));
+    }
+    /**
+     * Creates one shard more than there are bounds. Shard i holds the members with GMS from bounds[i - 1] up to but
+     * not including bounds[i].
+     *
+     * @param bounds The smallest GMS of each shard but the first, in increasing order.
+     */
+    public ShardedIntelligence(float[] bounds){
+        for(int i = 1;i < bounds.length;i++){
+            if(!(bounds[i - 1] < bounds[i])){
+                throw new IllegalArgumentException("Shard bounds are not increasing at position " + i);
+            }
+        }
+        this.bounds = bounds.clone();
+        int count = bounds.length + 1;
+        shards = new ConcurrentIntelligence[count];
+        writers = new ExecutorService[count];
+        pending = new AtomicLong[count];
+        for(int i = 0;i < count;i++){
+            String threadName = "shard-writer-" + i;
+            shards[i] = new ConcurrentIntelligence();
+            writers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable,threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            pending[i] = new AtomicLong();
+        }
+    }
+    /**
+     * Splits a GMS range into shards of equal width.
+     *
+     * @param count The number of shards.
+     * @param min The smallest GMS expected.
+     * @param max The largest GMS expected.
+     * @return The smallest GMS of each shard but the first.
+     */
+    private static float[] evenBounds(int count,float min,float max){
+        if(count <= 0 || !(min < max)){
+            throw new IllegalArgumentException("Invalid shards: " + count + " between " + min + " and " + max);
+        }
+        float[] bounds = new float[count - 1];
+        for(int i = 1;i < count;i++){
+            bounds[i - 1] = (float) (min + (double) (max - min) * i / count);
+        }
+        return bounds;
+    }
+    /**
+     * Adds a new member on the writer thread of its shard.
+     *
+     * @param name The name of the added member.
+     * @param number The GMS of the added member.
+     * @return A future which completes when the member is added, or completes exceptionally with an
+     * IllegalArgumentException if a member with the GMS is already in the family.
+     */
+    public CompletableFuture<Void> addNewMember(String name,float number){
+        int shard = shardOf(number);
+        return submit(shard,() -> shards[shard].addNewMember(name,number,Writer.nullWriter()));
+    }
+    /**
+     * Deletes a member on the writer thread of its shard.
+     *
+     * @param name The name of the member to be deleted.
+     * @param number The GMS of the member to be deleted.
+     * @return A future which completes when the member is deleted.
+     */
+    public CompletableFuture<Void> deleteMember(String name,float number){
+        int shard = shardOf(number);
+        return submit(shard,() -> shards[shard].deleteMember(name,number,Writer.nullWriter()));
+    }
+    /**
+     * Waits until every change submitted so far is applied.
+     */
+    public void await(){
+        CompletableFuture<?>[] barriers = new CompletableFuture<?>[shards.length];
+        for(int i = 0;i < shards.length;i++){
+            // a writer runs its tasks in order, so an empty task is done after the changes before it
+            barriers[i] = pending[i].get() == 0 ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.runAsync(() -> {},writers[i]);
+        }
+        CompletableFuture.allOf(barriers).join();
+    }
+    /**
+     * Finds the rank of a member in the logical family tree.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The rank of the member, or the length of the searched path if there is no such member.
+     */
+    public int findTheRank(String name,float number){
+        return view().rank(number);
+    }
+    /**
+     * Finds the members with the same rank as the given member in the logical family tree and logs them in the
+     * output file.
+     *
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @param file The Writer object to log the result.
+     * @throws IOException If an I/O error occurs while writing to the file.
+     */
+    public void findSameRank(String name,float number,Writer file) throws IOException {
+        View view = view();
+        view.sameRank(view.rank(number),file);
+    }
+    /**
+     * Finds the joint parent node of two members in the logical family tree.
+     *
+     * @param n1 The name of the first member.
+     * @param g1 The GMS of the first member.
+     * @param n2 The name of the second member.
+     * @param g2 The GMS of the second member.
+     * @return The joint parent node, or null if the family tree is empty.
+     */
+    public ConcurrentIntelligence.Node findParent(String n1,float g1,String n2,float g2){
+        return view().parent(g1,g2);
+    }
+    /**
+     * Finds the maximum number of members in the logical family tree such that no member is chosen together with
+     * its direct superior.
+     *
+     * @return The maximum number of independent members.
+     */
+    public int division(){
+        return view().division();
+    }
+    /**
+     * Returns the number of shards.
+     *
+     * @return The number of shards.
+     */
+    public int shardCount(){
+        return shards.length;
+    }
+    /**
+     * Returns the current root node of a shard.
+     *
+     * @param shard The index of the shard.
+     * @return The root node of the shard tree, or null if the shard is empty.
+     */
+    public ConcurrentIntelligence.Node shardBoss(int shard){
+        return shards[shard].boss();
+    }
+    /**
+     * Applies the submitted changes and stops the writer threads.
+     */
+    @Override
+    public void close(){
+        for(ExecutorService writer : writers){
+            writer.shutdown();
+        }
+        try{
+            for(ExecutorService writer : writers){
+                writer.awaitTermination(Long.MAX_VALUE,TimeUnit.NANOSECONDS);
+            }
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Finds the shard of a GMS.
+     *
+     * @param number The GMS.
+     * @return The index of the shard.
+     */
+    int shardOf(float number){
+        // the number of bounds not greater than number
+        int low = 0;
+        int high = bounds.length;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(bounds[middle] <= number){
+                low = middle + 1;
+            }
+            else{
+                high = middle;
+            }
+        }
+        return low;
+    }
+    /**
+     * Runs a change on the writer thread of a shard.
+     *
+     * @param shard The index of the shard.
+     * @param change The change.
+     * @return A future which completes when the change is applied.
+     */
+    private CompletableFuture<Void> submit(int shard,Change change){
+        pending[shard].incrementAndGet();
+        return CompletableFuture.runAsync(() -> {
+            try{
+                change.apply();
+            }
+            catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+            finally{
+                pending[shard].decrementAndGet();
+            }
+        },writers[shard]);
+    }
+    /**
+     * Waits for the submitted changes and takes a view of the shards.
+     *
+     * @return The view.
+     */
+    private View view(){
+        await();
+        ConcurrentIntelligence.Node[] roots = new ConcurrentIntelligence.Node[shards.length];
+        for(int i = 0;i < shards.length;i++){
+            roots[i] = shards[i].boss();
+        }
+        return new View(roots);
+    }
+
+    /**
+     * A change of a shard tree.
+     */
+    private interface Change {
+        void apply() throws IOException;
+    }
+
+    /**
+     * The logical family tree made of one version of every shard tree.
+     */
+    static final class View {
+        // root node of each shard tree
+        private final ConcurrentIntelligence.Node[] roots;
+        // indexes of the non-empty shards, in increasing order
+        private final int[] present;
+        // rank of the root node of each non-empty shard in the logical tree
+        private final int[] offsets;
+        /**
+         * Lays out the logical tree of the given shard trees.
+         *
+         * @param roots The root node of each shard tree.
+         */
+        View(ConcurrentIntelligence.Node[] roots){
+            this.roots = roots;
+            int count = 0;
+            for(ConcurrentIntelligence.Node root : roots){
+                if(root != null){
+                    count++;
+                }
+            }
+            present = new int[count];
+            count = 0;
+            for(int i = 0;i < roots.length;i++){
+                if(roots[i] != null){
+                    present[count++] = i;
+                }
+            }
+            offsets = new int[roots.length];
+            layout(0,present.length - 1,0);
+        }
+        /**
+         * Sets the ranks of the shard roots of a group of shards.
+         *
+         * @param from The position in present of the first shard of the group.
+         * @param to The position in present of the last shard of the group.
+         * @param rank The rank of the root of the group.
+         */
+        private void layout(int from,int to,int rank){
+            if(from > to){
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ConcurrentIntelligence.Node root = roots[present[middle]];
+            offsets[present[middle]] = rank;
+            layout(from,middle - 1,rank + sideDepth(root,true) + 1);
+            layout(middle + 1,to,rank + sideDepth(root,false) + 1);
+        }
+        /**
+         * Finds the rank of a member, or the length of its searched path if there is no such member.
+         *
+         * @param number The GMS of the member.
+         * @return The rank.
+         */
+        int rank(float number){
+            int from = 0;
+            int to = present.length - 1;
+            int rank = 0;
+            while(from <= to){
+                int middle = (from + to) >>> 1;
+                ConcurrentIntelligence.Node root = roots[present[middle]];
+                // below the smallest member of the shard, and a group of shards hangs there
+                if(number < smallest(root).GMS && from < middle){
+                    rank += sideDepth(root,true) + 1;
+                    to = middle - 1;
+                }
+                else if(number > largest(root).GMS && middle < to){
+                    rank += sideDepth(root,false) + 1;
+                    from = middle + 1;
+                }
+                else{
+                    return rank + ConcurrentIntelligence.findTheRank(number,root);
+                }
+            }
+            return rank;
+        }
+        /**
+         * Logs the members at a rank, shard by shard. The shards cover increasing GMS ranges, so the members come
+         * in the same order as in a traversal of the logical tree.
+         *
+         * @param rank The rank to search for.
+         * @param file The Writer object to log the result.
+         * @throws IOException If an I/O error occurs while writing to the file.
+         */
+        void sameRank(int rank,Writer file) throws IOException {
+            for(int shard : present){
+                if(rank >= offsets[shard]){
+                    ConcurrentIntelligence.findSameRank(roots[shard],0,rank - offsets[shard],file);
+                }
+            }
+        }
+        /**
+         * Finds the joint parent of two members. Members below and above the top shard of a group part at its
+         * root; otherwise the search goes on in the group on their side, or ends in the shard they are in.
+         *
+         * @param g1 The GMS of the first member.
+         * @param g2 The GMS of the second member.
+         * @return The joint parent node, or null if the logical tree is empty.
+         */
+        ConcurrentIntelligence.Node parent(float g1,float g2){
+            int from = 0;
+            int to = present.length - 1;
+            while(from <= to){
+                int middle = (from + to) >>> 1;
+                ConcurrentIntelligence.Node root = roots[present[middle]];
+                float smallest = smallest(root).GMS;
+                float largest = largest(root).GMS;
+                if(g1 < smallest && g2 < smallest && from < middle){
+                    to = middle - 1;
+                }
+                else if(g1 > largest && g2 > largest && middle < to){
+                    from = middle + 1;
+                }
+                else{
+                    return ConcurrentIntelligence.findParent(g1,g2,root);
+                }
+            }
+            return null;
+        }
+        /**
+         * Computes the division of the logical tree.
+         *
+         * @return The maximum number of independent members.
+         */
+        int division(){
+            int[] values = groupValues(0,present.length - 1);
+            return Math.max(values[0],values[1]);
+        }
+        /**
+         * Computes the division values of the root of a group of shards. Only the nodes on the left and right sides
+         * of the top shard get new inferiors, so only they are computed again; the values of every other node are
+         * taken from the shard trees.
+         *
+         * @param from The position in present of the first shard of the group.
+         * @param to The position in present of the last shard of the group.
+         * @return The values with and without the root chosen, zeros for an empty group.
+         */
+        private int[] groupValues(int from,int to){
+            if(from > to){
+                return new int[2];
+            }
+            int middle = (from + to) >>> 1;
+            return sideValues(roots[present[middle]],groupValues(from,middle - 1),groupValues(middle + 1,to),true,true);
+        }
+        /**
+         * Computes the division values of a node of the top shard of a group with the groups below and above hung
+         * under its smallest and largest members.
+         *
+         * @param t The node.
+         * @param lower The values of the group hung under the smallest member.
+         * @param upper The values of the group hung under the largest member.
+         * @param leftSide True if the node is on the way from the shard root to its smallest member.
+         * @param rightSide True if the node is on the way from the shard root to its largest member.
+         * @return The values with and without the node chosen.
+         */
+        private static int[] sideValues(ConcurrentIntelligence.Node t,int[] lower,int[] upper,boolean leftSide,
+                                        boolean rightSide){
+            int[] left;
+            if(!leftSide){
+                left = values(t.leftMember);
+            }
+            else if(t.leftMember == null){
+                left = lower;
+            }
+            else{
+                left = sideValues(t.leftMember,lower,upper,true,false);
+            }
+            int[] right;
+            if(!rightSide){
+                right = values(t.rightMember);
+            }
+            else if(t.rightMember == null){
+                right = upper;
+            }
+            else{
+                right = sideValues(t.rightMember,lower,upper,false,true);
+            }
+            return new int[]{1 + left[1] + right[1],Math.max(left[0],left[1]) + Math.max(right[0],right[1])};
+        }
+        /**
+         * Returns the division values kept in a node.
+         *
+         * @param t The node, or null.
+         * @return The values with and without the node chosen.
+         */
+        private static int[] values(ConcurrentIntelligence.Node t){
+            return t == null ? new int[2] : new int[]{t.withMember,t.withoutMember};
+        }
+        /**
+         * Counts the steps from a node down to the smallest or largest member under it.
+         *
+         * @param t The node.
+         * @param left True for the smallest member, false for the largest.
+         * @return The number of steps.
+         */
+        private static int sideDepth(ConcurrentIntelligence.Node t,boolean left){
+            int depth = 0;
+            for(ConcurrentIntelligence.Node next = left ? t.leftMember : t.rightMember;next != null;
+                next = left ? next.leftMember : next.rightMember){
+                depth++;
+            }
+            return depth;
+        }
+        /**
+         * Finds the smallest member under a node.
+         *
+         * @param t The node.
+         * @return The node of the smallest member.
+         */
+        private static ConcurrentIntelligence.Node smallest(ConcurrentIntelligence.Node t){
+            while(t.leftMember != null){
+                t = t.leftMember;
+            }
+            return t;
+        }
+        /**
+         * Finds the largest member under a node.
+         *
+         * @param t The node.
+         * @return The node of the largest member.
+         */
+        private static ConcurrentIntelligence.Node largest(ConcurrentIntelligence.Node t){
+            while(t.rightMember != null){
+                t = t.rightMember;
+            }
+            return t;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+/**
+ * The TreeCodec class writes a family tree in a compact binary format and reads it back with the same shape. The
+ * format is:
+ *
+ *   magic "AVLC", version byte, varint number of nodes,
+ *   varint number of names, then each distinct name as a varint byte length and its UTF-8 bytes,
+ *   the nodes in pre-order, each as a flag byte (left inferior follows, right inferior follows, has ties), the GMS
+ *   as 4 bytes, the varint dictionary index of its name, and if it has ties their varint count and indexes.
+ *
+ * Varints are unsigned, 7 bits per byte, low bits first. Heights, sizes and division values are not stored: the
+ * reader recomputes them bottom-up while it reads, in one pass with no rotations. The reader also checks that every
+ * GMS lies strictly between the GMS values of the superiors it is under and that every node is balanced, so a
+ * corrupt or edited file is rejected instead of loading as a broken tree. The dictionary and the names are grown as
+ * their bytes arrive rather than allocated from the counts in the data, so a corrupt count or length ends the read
+ * at the end of the data instead of running out of memory.
+ */
+public final class TreeCodec {
+    // first bytes of the format, "AVLC"
+    private static final int MAGIC = 0x41564c43;
+    // version of the format
+    private static final int VERSION = 1;
+    // flags of a node
+    private static final int HAS_LEFT = 1;
+    private static final int HAS_RIGHT = 2;
+    private static final int HAS_TIES = 4;
+    // deepest rank of a balanced tree of 2^31 nodes, a deeper node means the data is corrupt
+    private static final int MAX_DEPTH = 45;
+    // number of names or name bytes allocated before any of them is read
+    private static final int CHUNK = 8192;
+
+    private TreeCodec(){
+    }
+    /**
+     * Writes a family tree. The stream should be buffered; it is flushed but not closed.
+     *
+     * @param boss The root node of the family tree, or null for an empty tree.
+     * @param stream The stream to write to.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    public static void write(Intelligence.Node boss,OutputStream stream) throws IOException {
+        // number the distinct names in the order they are first met in pre-order
+        Map<String,Integer> ids = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int nodes = number(boss,ids,dictionary);
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarint(out,nodes);
+        writeVarint(out,dictionary.size());
+        for(String name : dictionary){
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out,bytes.length);
+            out.write(bytes);
+        }
+        writeNode(boss,ids,out);
+        out.flush();
+    }
+    /**
+     * Reads a family tree written by write. The stream should be buffered; it is not closed.
+     *
+     * @param stream The stream to read from.
+     * @return The root node of the family tree, or null for an empty tree.
+     * @throws IOException If an I/O error occurs while reading, or the data is not a valid tree.
+     */
+    public static Intelligence.Node read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if(in.readInt() != MAGIC){
+            throw new IOException("Not a family tree");
+        }
+        int version = in.readUnsignedByte();
+        if(version != VERSION){
+            throw new IOException("Unsupported family tree version: " + version);
+        }
+        int nodes = readVarint(in);
+        int names = readVarint(in);
+        String[] dictionary = new String[Math.min(names,CHUNK)];
+        for(int i = 0;i < names;i++){
+            if(i == dictionary.length){
+                dictionary = Arrays.copyOf(dictionary,(int) Math.min(names,2L * i));
+            }
+            dictionary[i] = readName(in);
+        }
+        if(nodes == 0){
+            return null;
+        }
+        int[] read = new int[1];
+        Intelligence.Node boss = readNode(in,dictionary,read,nodes,0,null,null);
+        if(read[0] != nodes){
+            throw new IOException("Family tree has " + read[0] + " nodes, " + nodes + " expected");
+        }
+        return boss;
+    }
+    /**
+     * Reads a name as a varint byte length and its UTF-8 bytes. The bytes are read into a buffer which doubles as
+     * it fills, so a length beyond the end of the data fails when the data ends.
+     *
+     * @param in The stream to read from.
+     * @return The name.
+     * @throws IOException If an I/O error occurs while reading, or the data ends inside the name.
+     */
+    private static String readName(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        byte[] bytes = new byte[Math.min(length,CHUNK)];
+        in.readFully(bytes);
+        while(bytes.length < length){
+            int filled = bytes.length;
+            bytes = Arrays.copyOf(bytes,(int) Math.min(length,2L * filled));
+            in.readFully(bytes,filled,bytes.length - filled);
+        }
+        return new String(bytes,StandardCharsets.UTF_8);
+    }
+    /**
+     * Gives dictionary indexes to the names of a subtree in pre-order.
+     *
+     * @param t The root node of the subtree.
+     * @param ids The indexes of the names met so far.
+     * @param dictionary The names met so far, in index order.
+     * @return The number of nodes in the subtree.
+     */
+    private static int number(Intelligence.Node t,Map<String,Integer> ids,List<String> dictionary){
+        if(t == null){
+            return 0;
+        }
+        addName(t.name,ids,dictionary);
+        for(int i = 0;i < t.tieCount;i++){
+            addName(t.ties[i],ids,dictionary);
+        }
+        return 1 + number(t.leftMember,ids,dictionary) + number(t.rightMember,ids,dictionary);
+    }
+    /**
+     * Gives a name the next dictionary index, if it has none yet.
+     *
+     * @param name The name.
+     * @param ids The indexes of the names met so far.
+     * @param dictionary The names met so far, in index order.
+     */
+    private static void addName(String name,Map<String,Integer> ids,List<String> dictionary){
+        if(!ids.containsKey(name)){
+            ids.put(name,dictionary.size());
+            dictionary.add(name);
+        }
+    }
+    /**
+     * Writes a subtree in pre-order.
+     *
+     * @param t The root node of the subtree.
+     * @param ids The dictionary indexes of the names.
+     * @param out The stream to write to.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    private static void writeNode(Intelligence.Node t,Map<String,Integer> ids,DataOutputStream out) throws IOException {
+        if(t == null){
+            return;
+        }
+        out.writeByte((t.leftMember != null ? HAS_LEFT : 0) | (t.rightMember != null ? HAS_RIGHT : 0)
+                | (t.tieCount > 0 ? HAS_TIES : 0));
+        out.writeFloat(t.GMS);
+        writeVarint(out,ids.get(t.name));
+        if(t.tieCount > 0){
+            writeVarint(out,t.tieCount);
+            for(int i = 0;i < t.tieCount;i++){
+                writeVarint(out,ids.get(t.ties[i]));
+            }
+        }
+        writeNode(t.leftMember,ids,out);
+        writeNode(t.rightMember,ids,out);
+    }
+    /**
+     * Reads a subtree in pre-order and sets the height, size and division values of each node after its inferiors.
+     *
+     * @param in The stream to read from.
+     * @param dictionary The names by dictionary index.
+     * @param read The number of nodes read so far, counted up.
+     * @param nodes The number of nodes in the header.
+     * @param depth The rank of the node to read.
+     * @param lower The nearest superior the subtree is on the right of, or null; its GMS must be smaller.
+     * @param upper The nearest superior the subtree is on the left of, or null; its GMS must be greater.
+     * @return The root node of the subtree.
+     * @throws IOException If an I/O error occurs while reading, or the data is not a valid tree.
+     */
+    private static Intelligence.Node readNode(DataInputStream in,String[] dictionary,int[] read,int nodes,int depth,
+                                              Intelligence.Node lower,Intelligence.Node upper) throws IOException {
+        // checked before going deeper, so a corrupt file can not run out of stack before the balance check
+        if(read[0] >= nodes || depth > MAX_DEPTH){
+            throw new IOException("Family tree has more than " + nodes + " nodes or is deeper than " + MAX_DEPTH);
+        }
+        int flags = in.readUnsignedByte();
+        if((flags & ~(HAS_LEFT | HAS_RIGHT | HAS_TIES)) != 0){
+            throw new IOException("Unknown node flags: " + flags);
+        }
+        float number = in.readFloat();
+        // NaN fails both comparisons, so it is rejected under a superior; at the top it is checked by itself
+        if(Float.isNaN(number) || (lower != null && !(number > lower.GMS)) || (upper != null && !(number < upper.GMS))){
+            throw new IOException("GMS " + number + " is out of order" + (lower == null ? "" : " after " + lower.GMS)
+                    + (upper == null ? "" : " before " + upper.GMS));
+        }
+        Intelligence.Node node = new Intelligence.Node(name(in,dictionary),number);
+        read[0]++;
+        if((flags & HAS_TIES) != 0){
+            int tieCount = readVarint(in);
+            if(tieCount == 0 || tieCount > dictionary.length){
+                throw new IOException("Invalid number of tied members: " + tieCount);
+            }
+            node.ties = new String[tieCount];
+            for(int i = 0;i < tieCount;i++){
+                node.ties[i] = name(in,dictionary);
+            }
+            node.tieCount = tieCount;
+        }
+        if((flags & HAS_LEFT) != 0){
+            node.leftMember = readNode(in,dictionary,read,nodes,depth + 1,lower,node);
+        }
+        if((flags & HAS_RIGHT) != 0){
+            node.rightMember = readNode(in,dictionary,read,nodes,depth + 1,node,upper);
+        }
+        Intelligence.update(node);
+        if(!Intelligence.checkBalance(node)){
+            throw new IOException("Family tree is not balanced at GMS " + node.GMS);
+        }
+        return node;
+    }
+    /**
+     * Reads a dictionary index and returns its name.
+     *
+     * @param in The stream to read from.
+     * @param dictionary The names by dictionary index.
+     * @return The name.
+     * @throws IOException If an I/O error occurs while reading, or the index is not in the dictionary.
+     */
+    private static String name(DataInputStream in,String[] dictionary) throws IOException {
+        int id = readVarint(in);
+        if(id >= dictionary.length){
+            throw new IOException("Name " + id + " is not in the dictionary of " + dictionary.length + " names");
+        }
+        return dictionary[id];
+    }
+    /**
+     * Writes a non-negative int in 7-bit groups, low bits first.
+     *
+     * @param out The stream to write to.
+     * @param value The value.
+     * @throws IOException If an I/O error occurs while writing.
+     */
+    private static void writeVarint(DataOutputStream out,int value) throws IOException {
+        while((value & ~0x7f) != 0){
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    /**
+     * Reads a non-negative int written by writeVarint.
+     *
+     * @param in The stream to read from.
+     * @return The value.
+     * @throws IOException If an I/O error occurs while reading, or the value is too long.
+     */
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for(int shift = 0;shift < 32;shift += 7){
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0){
+                if(value < 0){
+                    throw new IOException("Varint is out of range");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long");
+    }
+}
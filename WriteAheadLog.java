@@ -0,0 +1,300 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+/**
+ * The WriteAheadLog class keeps an append-only binary log of the MEMBER_IN and MEMBER_OUT operations applied to a
+ * family tree. Records are collected in a buffer and written and forced to disk together, once per group of records,
+ * so the cost of an fsync is shared by the whole group. The log is split into segment files named after the sequence
+ * number of their first record; when a checkpoint covers a segment, the segment can be deleted.
+ *
+ * Each record is the length of its body, the body (opcode, GMS, UTF-8 name) and a CRC32 of the body. A record which
+ * was only partly written when the process died is found by its length or checksum and cut off on recovery.
+ */
+public class WriteAheadLog implements Closeable {
+    // record opcodes, the same as the CommandReader opcodes
+    public static final byte MEMBER_IN = CommandReader.MEMBER_IN;
+    public static final byte MEMBER_OUT = CommandReader.MEMBER_OUT;
+    // default number of records written and forced together
+    public static final int DEFAULT_GROUP_SIZE = 1024;
+    // size of the buffer the records of a group are collected in, a larger group is written when the buffer is full
+    private static final int BUFFER_SIZE = 1 << 20;
+    // bytes of a record besides the name: length, opcode, GMS, name length and checksum
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4 + 4 + 4;
+    // prefix and suffix of the segment file names
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    // directory of the segments
+    private final Path directory;
+    // number of records after which the group is committed
+    private final int groupSize;
+    // records of the current group
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // checksum of the record bodies
+    private final CRC32 crc = new CRC32();
+    // segment the records are appended to
+    private FileChannel segment;
+    // sequence number of the next record
+    private long nextSequence;
+    // number of records in the current group
+    private int pending;
+    /**
+     * Opens the log for appending, starting a new segment after the records already in the directory.
+     *
+     * @param directory The directory of the segments.
+     * @param nextSequence The sequence number of the next record, one more than the last record kept.
+     * @param groupSize The number of records written and forced together.
+     * @throws IOException If the segment can not be created.
+     */
+    public WriteAheadLog(Path directory,long nextSequence,int groupSize) throws IOException {
+        if(groupSize <= 0){
+            throw new IllegalArgumentException("groupSize must be positive: " + groupSize);
+        }
+        this.directory = directory;
+        this.groupSize = groupSize;
+        this.nextSequence = nextSequence;
+        Files.createDirectories(directory);
+        segment = openSegment(nextSequence);
+    }
+    /**
+     * Appends a record to the current group. The record is durable once the group is committed.
+     *
+     * @param opcode MEMBER_IN or MEMBER_OUT.
+     * @param name The name of the member.
+     * @param number The GMS of the member.
+     * @return The sequence number of the record.
+     * @throws IOException If a full group can not be written.
+     */
+    public long append(byte opcode,String name,float number) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_OVERHEAD + bytes.length;
+        if(length > buffer.capacity()){
+            throw new IllegalArgumentException("Name is too long for the log: " + bytes.length + " bytes");
+        }
+        if(length > buffer.remaining()){
+            writeBuffer();
+        }
+        int start = buffer.position();
+        buffer.putInt(length - 8);
+        buffer.put(opcode);
+        buffer.putFloat(number);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + 4).limit(buffer.position()));
+        buffer.putInt((int) crc.getValue());
+        pending++;
+        if(pending >= groupSize){
+            commit();
+        }
+        return nextSequence++;
+    }
+    /**
+     * Writes the records of the current group and forces them to disk.
+     *
+     * @throws IOException If an I/O error occurs while writing the segment.
+     */
+    public void commit() throws IOException {
+        if(pending == 0 && buffer.position() == 0){
+            return;
+        }
+        writeBuffer();
+        segment.force(false);
+        pending = 0;
+    }
+    /**
+     * Commits the current group and starts a new segment, so the records before it can be deleted once a checkpoint
+     * covers them.
+     *
+     * @return The sequence number of the first record of the new segment.
+     * @throws IOException If an I/O error occurs while writing the segments.
+     */
+    public long rotate() throws IOException {
+        commit();
+        segment.close();
+        segment = openSegment(nextSequence);
+        return nextSequence;
+    }
+    /**
+     * Deletes the segments whose records all come before a sequence number.
+     *
+     * @param sequence The sequence number of the first record still needed.
+     * @throws IOException If a segment can not be deleted.
+     */
+    public void deleteBefore(long sequence) throws IOException {
+        List<Long> starts = segments(directory);
+        for(int i = 0;i + 1 < starts.size();i++){
+            // a segment ends where the next one starts
+            if(starts.get(i + 1) <= sequence){
+                Files.deleteIfExists(segmentPath(directory,starts.get(i)));
+            }
+        }
+    }
+    /**
+     * Returns the sequence number of the next record.
+     *
+     * @return The sequence number.
+     */
+    public long nextSequence(){
+        return nextSequence;
+    }
+    /**
+     * Commits the current group and closes the segment.
+     *
+     * @throws IOException If an I/O error occurs while writing the segment.
+     */
+    @Override
+    public void close() throws IOException {
+        try{
+            commit();
+        }
+        finally{
+            segment.close();
+        }
+    }
+    /**
+     * Applies the records of the log from a sequence number on to the family tree, writing no log. A record cut off
+     * by a crash ends the replay, and the segment is truncated before it so new records follow the last good one.
+     *
+     * @param directory The directory of the segments.
+     * @param from The sequence number of the first record to apply.
+     * @param family The family tree.
+     * @return The sequence number after the last record in the log.
+     * @throws IOException If a segment can not be read.
+     */
+    public static long replay(Path directory,long from,Intelligence family) throws IOException {
+        long sequence = from;
+        if(!Files.isDirectory(directory)){
+            return sequence;
+        }
+        List<Long> starts = segments(directory);
+        for(int i = 0;i < starts.size();i++){
+            long start = starts.get(i);
+            if(i + 1 < starts.size() && starts.get(i + 1) <= from){
+                continue;
+            }
+            long next = start;
+            try(FileChannel channel = FileChannel.open(segmentPath(directory,start),StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)){
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+                CRC32 crc = new CRC32();
+                while(data.remaining() >= 4){
+                    int recordStart = data.position();
+                    int length = data.getInt();
+                    if(length < RECORD_OVERHEAD - 8 || length + 4 > data.remaining()){
+                        data.position(recordStart);
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(data.duplicate().limit(data.position() + length));
+                    byte opcode = data.get();
+                    float number = data.getFloat();
+                    int nameLength = data.getInt();
+                    if(nameLength != length - (RECORD_OVERHEAD - 8)){
+                        data.position(recordStart);
+                        break;
+                    }
+                    byte[] bytes = new byte[nameLength];
+                    data.get(bytes);
+                    if(data.getInt() != (int) crc.getValue()){
+                        data.position(recordStart);
+                        break;
+                    }
+                    if(next >= from){
+                        String name = new String(bytes,StandardCharsets.UTF_8);
+                        if(opcode == MEMBER_IN){
+                            family.addNewMember(name,number,FamilyListener.NONE);
+                        }
+                        else{
+                            family.deleteMember(name,number,FamilyListener.NONE);
+                        }
+                    }
+                    next++;
+                }
+                // drop the torn tail, only the last segment can have one
+                if(data.hasRemaining()){
+                    channel.truncate(data.position());
+                }
+            }
+            sequence = Math.max(sequence,next);
+        }
+        return sequence;
+    }
+    /**
+     * Writes the collected records to the segment without forcing them.
+     *
+     * @throws IOException If an I/O error occurs while writing the segment.
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            segment.write(buffer);
+        }
+        buffer.clear();
+    }
+    /**
+     * Creates the segment starting at a sequence number.
+     *
+     * @param sequence The sequence number of the first record of the segment.
+     * @return The channel of the segment, positioned at its end.
+     * @throws IOException If the segment can not be created.
+     */
+    private FileChannel openSegment(long sequence) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(directory,sequence),StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,StandardOpenOption.APPEND);
+        // the new file name must be durable too, or the segment may be lost with the directory entry
+        forceDirectory(directory);
+        return channel;
+    }
+    /**
+     * Lists the first sequence numbers of the segments in a directory, in increasing order.
+     *
+     * @param directory The directory of the segments.
+     * @return The first sequence numbers.
+     * @throws IOException If the directory can not be read.
+     */
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory,PREFIX + "*" + SUFFIX)){
+            for(Path file : files){
+                String name = file.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(PREFIX.length(),name.length() - SUFFIX.length())));
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+    /**
+     * Returns the path of a segment.
+     *
+     * @param directory The directory of the segments.
+     * @param sequence The sequence number of the first record of the segment.
+     * @return The path of the segment.
+     */
+    private static Path segmentPath(Path directory,long sequence){
+        return directory.resolve(String.format(Locale.ROOT,"%s%020d%s",PREFIX,sequence,SUFFIX));
+    }
+    /**
+     * Forces the entries of a directory to disk. Not every platform can open a directory, so a failure is ignored.
+     *
+     * @param directory The directory.
+     */
+    static void forceDirectory(Path directory){
+        try(FileChannel channel = FileChannel.open(directory,StandardOpenOption.READ)){
+            channel.force(true);
+        }
+        catch(IOException e){
+            // the entries are written with the next sync of the file system
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+/**
+ * The CommandReaderBenchmark class compares the throughput of CommandReader with java.util.Scanner on the same
+ * command file. Both readers consume every token of the file and their checksums must be equal.
+ *
+ * Usage: java CommandReaderBenchmark [command file] [number of commands] [rounds]
+ * The command file is generated first if it does not exist.
+ */
+public class CommandReaderBenchmark {
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The command file, the number of commands and the number of rounds.
+     * @throws IOException If an I/O error occurs while reading or writing the file.
+     */
+    public static void main(String[] args) throws IOException {
+        Path path = Paths.get(args.length > 0 ? args[0] : "commands.txt");
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        if(!Files.exists(path)){
+            generate(path,commands,new Random(42));
+        }
+        long bytes = Files.size(path);
+        for(int round = 1;round <= rounds;round++){
+            long start = System.nanoTime();
+            long expected = scanWithScanner(path.toFile());
+            report("Scanner",round,bytes,System.nanoTime() - start);
+            for(boolean mapped : new boolean[]{false,true}){
+                start = System.nanoTime();
+                long checksum = scanWithCommandReader(path,mapped);
+                report(mapped ? "CommandReader(mapped)" : "CommandReader(direct)",round,bytes,System.nanoTime() - start);
+                if(checksum != expected){
+                    throw new IllegalStateException("Checksums differ: " + checksum + " != " + expected);
+                }
+            }
+        }
+    }
+    /**
+     * Writes a random command file in the input format of Intelligence.
+     *
+     * @param path The path of the command file.
+     * @param commands The number of commands after the boss line.
+     * @param random The source of the random names and GMS values.
+     * @throws IOException If an I/O error occurs while writing the file.
+     */
+    static void generate(Path path,int commands,Random random) throws IOException {
+        try(Writer out = new BufferedWriter(Files.newBufferedWriter(path),1 << 16)){
+            out.write("Boss 50.000\n");
+            for(int i = 0;i < commands;i++){
+                int operation = random.nextInt(10);
+                if(operation < 5){
+                    out.write("MEMBER_IN M" + i + " " + gms(random) + "\n");
+                }
+                else if(operation < 6){
+                    out.write("MEMBER_OUT M" + random.nextInt(i + 1) + " " + gms(random) + "\n");
+                }
+                else if(operation < 8){
+                    out.write("INTEL_TARGET M" + random.nextInt(i + 1) + " " + gms(random) + " M"
+                            + random.nextInt(i + 1) + " " + gms(random) + "\n");
+                }
+                else if(operation < 9){
+                    out.write("INTEL_RANK M" + random.nextInt(i + 1) + " " + gms(random) + "\n");
+                }
+                else{
+                    out.write("INTEL_DIVIDE\n");
+                }
+            }
+        }
+    }
+    /**
+     * Creates a GMS value with three fraction digits.
+     *
+     * @param random The source of the value.
+     * @return The GMS as text.
+     */
+    private static String gms(Random random){
+        return String.format(Locale.ROOT,"%.3f",random.nextFloat() * 100);
+    }
+    /**
+     * Reads every command of the file with Scanner, the same way Intelligence.main did.
+     *
+     * @param file The command file.
+     * @return A checksum of the tokens.
+     * @throws IOException If the file can not be read.
+     */
+    static long scanWithScanner(File file) throws IOException {
+        long checksum = 0;
+        try(Scanner reader = new Scanner(file)){
+            checksum = checksum * 31 + reader.next().hashCode();
+            checksum = checksum * 31 + Float.floatToIntBits(reader.nextFloat());
+            while(reader.hasNext()){
+                String operation = reader.next();
+                int arguments = arguments(operation);
+                checksum = checksum * 31 + arguments;
+                for(int i = 0;i < arguments;i++){
+                    checksum = checksum * 31 + reader.next().hashCode();
+                    checksum = checksum * 31 + Float.floatToIntBits(reader.nextFloat());
+                }
+            }
+        }
+        return checksum;
+    }
+    /**
+     * Reads every command of the file with CommandReader.
+     *
+     * @param path The command file.
+     * @param mapped True to read the file through memory-mapped regions.
+     * @return A checksum of the tokens.
+     * @throws IOException If the file can not be read.
+     */
+    static long scanWithCommandReader(Path path,boolean mapped) throws IOException {
+        long checksum = 0;
+        try(CommandReader reader = new CommandReader(path,mapped)){
+            checksum = checksum * 31 + reader.nextName().hashCode();
+            checksum = checksum * 31 + Float.floatToIntBits(reader.nextFloat());
+            int operation;
+            while((operation = reader.nextOpcode()) != CommandReader.END){
+                int arguments = arguments(operation);
+                checksum = checksum * 31 + arguments;
+                for(int i = 0;i < arguments;i++){
+                    checksum = checksum * 31 + reader.nextName().hashCode();
+                    checksum = checksum * 31 + Float.floatToIntBits(reader.nextFloat());
+                }
+            }
+        }
+        return checksum;
+    }
+    /**
+     * Finds the number of (name, GMS) pairs an operation takes.
+     *
+     * @param operation The operation name.
+     * @return The number of pairs.
+     */
+    private static int arguments(String operation){
+        switch(operation){
+            case "MEMBER_IN": return arguments(CommandReader.MEMBER_IN);
+            case "MEMBER_OUT": return arguments(CommandReader.MEMBER_OUT);
+            case "INTEL_TARGET": return arguments(CommandReader.INTEL_TARGET);
+            case "INTEL_RANK": return arguments(CommandReader.INTEL_RANK);
+            default: return 0;
+        }
+    }
+    /**
+     * Finds the number of (name, GMS) pairs an operation takes.
+     *
+     * @param opcode The opcode of the operation.
+     * @return The number of pairs.
+     */
+    private static int arguments(int opcode){
+        if(opcode == CommandReader.INTEL_TARGET){
+            return 2;
+        }
+        if(opcode == CommandReader.MEMBER_IN || opcode == CommandReader.MEMBER_OUT || opcode == CommandReader.INTEL_RANK){
+            return 1;
+        }
+        return 0;
+    }
+    /**
+     * Prints the throughput of one run.
+     *
+     * @param reader The name of the reader.
+     * @param round The round number.
+     * @param bytes The size of the command file.
+     * @param nanos The time the run took.
+     */
+    private static void report(String reader,int round,long bytes,long nanos){
+        double seconds = nanos / 1e9;
+        System.out.printf(Locale.ROOT,"round %d %-22s %8.3f s %10.1f MB/s%n",round,reader,seconds,bytes / seconds / 1e6);
+    }
+}
@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+/**
+ * The IntelligenceBenchmark class measures every operation of Intelligence on trees of different sizes and key
+ * distributions. For each operation it reports the throughput and the allocated bytes per operation over the
+ * measured iterations, and the latency percentiles of one extra iteration in which every operation is timed.
+ * Each result is printed as one JSON object per line, so runs can be compared by a script.
+ *
+ * Usage: java IntelligenceBenchmark [--sizes 1000,10000,...] [--distributions uniform,sorted,zigzag]
+ *        [--operations add,delete,search,parent,rank,divide] [--warmup 3] [--iterations 5] [--out file]
+ */
+public class IntelligenceBenchmark {
+    // number of queries of the read operations in one iteration
+    private static final int QUERIES = 1_000_000;
+    // number of rank queries in one iteration, each of them lists a whole level of the tree
+    private static final int RANK_QUERIES = 10_000;
+    // most operations timed one by one in the latency iteration
+    private static final int MAX_SAMPLES = 1_000_000;
+    // writer which drops the log, so only the tree work and the log strings are measured
+    private static final Writer LOG = Writer.nullWriter();
+    // order of the three keys of a zigzag group, for even and odd groups
+    private static final int[][] ZIGZAG = {{0,2,1},{2,0,1}};
+    // sum of the query results, so the queries are not optimized away
+    static volatile long consumed;
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The options described in the class comment.
+     * @throws IOException If the result file can not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String,String> options = new LinkedHashMap<>();
+        options.put("--sizes","1000,10000,100000,1000000");
+        options.put("--distributions","uniform,sorted,zigzag");
+        options.put("--operations","add,delete,search,parent,rank,divide");
+        options.put("--warmup","3");
+        options.put("--iterations","5");
+        options.put("--out",null);
+        for(int i = 0;i + 1 < args.length;i += 2){
+            if(!options.containsKey(args[i])){
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            options.put(args[i],args[i + 1]);
+        }
+        int warmup = Integer.parseInt(options.get("--warmup"));
+        int iterations = Integer.parseInt(options.get("--iterations"));
+        PrintStream out = options.get("--out") == null ? System.out
+                : new PrintStream(Files.newOutputStream(Paths.get(options.get("--out"))),true,"UTF-8");
+        for(String size : options.get("--sizes").split(",")){
+            for(String distribution : options.get("--distributions").split(",")){
+                float[] keys = keys(distribution,Integer.parseInt(size.trim()),new Random(42));
+                for(String operation : options.get("--operations").split(",")){
+                    out.println(run(operation.trim(),distribution,keys,warmup,iterations));
+                }
+            }
+        }
+        if(out != System.out){
+            out.close();
+        }
+    }
+    /**
+     * Creates the keys of a tree in the order they are added.
+     *
+     * @param distribution uniform for random keys, sorted for increasing keys, or zigzag for keys which cause a
+     *                     double rotation on almost every third insert.
+     * @param size The number of keys.
+     * @param random The source of the random keys.
+     * @return The keys.
+     */
+    static float[] keys(String distribution,int size,Random random){
+        float[] keys = new float[size];
+        switch(distribution){
+            case "uniform":
+                for(int i = 0;i < size;i++){
+                    keys[i] = random.nextFloat() * size;
+                }
+                break;
+            case "sorted":
+                for(int i = 0;i < size;i++){
+                    keys[i] = i;
+                }
+                break;
+            case "zigzag":
+                // x, x + 2, x + 1 makes a right-left shape, the next group a left-right shape
+                for(int i = 0;i < size;i++){
+                    int group = i / 3;
+                    int base = (group % 2 == 0 ? group : -group) * 3;
+                    int offset = i % 3;
+                    keys[i] = base + ZIGZAG[group % 2][offset];
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+        return keys;
+    }
+    /**
+     * Measures one operation on one tree.
+     *
+     * @param operation The operation.
+     * @param distribution The name of the key distribution.
+     * @param keys The keys of the tree.
+     * @param warmup The number of warmup iterations.
+     * @param iterations The number of measured iterations.
+     * @return The result as a JSON object.
+     * @throws IOException If the log can not be written.
+     */
+    static String run(String operation,String distribution,float[] keys,int warmup,int iterations) throws IOException {
+        for(int i = 0;i < warmup;i++){
+            iteration(operation,keys,null,new Random(i));
+        }
+        long operations = 0;
+        long nanos = 0;
+        long bytes = 0;
+        for(int i = 0;i < iterations;i++){
+            long[] measured = iteration(operation,keys,null,new Random(warmup + i));
+            operations += measured[0];
+            nanos += measured[1];
+            bytes += measured[2];
+        }
+        long[] samples = new long[MAX_SAMPLES];
+        long[] timed = iteration(operation,keys,samples,new Random(warmup + iterations));
+        int count = (int) Math.min(timed[0],samples.length);
+        Arrays.sort(samples,0,count);
+        return String.format(Locale.ROOT,"{\"operation\":\"%s\",\"distribution\":\"%s\",\"size\":%d,"
+                        + "\"iterations\":%d,\"opsPerSecond\":%.1f,\"allocatedBytesPerOp\":%.1f,"
+                        + "\"latencyNanos\":{\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}}",
+                operation,distribution,keys.length,iterations,operations * 1e9 / Math.max(nanos,1),
+                (double) bytes / Math.max(operations,1),percentile(samples,count,0.5),percentile(samples,count,0.9),
+                percentile(samples,count,0.99),percentile(samples,count,0.999),percentile(samples,count,1.0));
+    }
+    /**
+     * Runs one iteration of an operation. The tree the operation needs is built before the clock starts.
+     *
+     * @param operation The operation.
+     * @param keys The keys of the tree.
+     * @param samples The array the latency of each operation is written to, or null to not time operations one by
+     *                one.
+     * @param random The source of the query keys.
+     * @return The number of operations, the elapsed nanoseconds and the allocated bytes.
+     * @throws IOException If the log can not be written.
+     */
+    static long[] iteration(String operation,float[] keys,long[] samples,Random random) throws IOException {
+        Intelligence t = new Intelligence();
+        Intelligence.clear();
+        if(!operation.equals("add")){
+            for(float key : keys){
+                t.addNewMember("M",key,LOG);
+            }
+        }
+        int count;
+        float[] first;
+        float[] second = null;
+        switch(operation){
+            case "add":
+            case "delete":
+                count = keys.length;
+                first = keys.clone();
+                if(operation.equals("delete")){
+                    shuffle(first,random);
+                }
+                break;
+            case "parent":
+                count = QUERIES;
+                first = pick(keys,count,random);
+                second = pick(keys,count,random);
+                break;
+            case "rank":
+                count = RANK_QUERIES;
+                first = pick(keys,count,random);
+                break;
+            case "search":
+            case "divide":
+                count = QUERIES;
+                first = pick(keys,count,random);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+        int every = samples == null ? 0 : Math.max(1,(count + samples.length - 1) / samples.length);
+        int sampled = 0;
+        long sink = 0;
+        System.gc();
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for(int i = 0;i < count;i++){
+            long before = every > 0 && i % every == 0 ? System.nanoTime() : 0;
+            switch(operation){
+                case "add":
+                    t.addNewMember("M",first[i],LOG);
+                    break;
+                case "delete":
+                    t.deleteMember("M",first[i],LOG);
+                    break;
+                case "search":
+                    sink += Intelligence.searchMember2("M",first[i]);
+                    break;
+                case "parent":
+                    sink += Intelligence.findParent("M",first[i],"M",second[i],Intelligence.boss).height;
+                    break;
+                case "rank":
+                    Intelligence.findSameRank(Intelligence.findTheRank("M",first[i]),LOG);
+                    break;
+                default:
+                    sink += Intelligence.division(Intelligence.boss);
+                    break;
+            }
+            if(before != 0 && sampled < samples.length){
+                samples[sampled++] = System.nanoTime() - before;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+        // keep the results of the queries alive
+        consumed = sink;
+        return new long[]{sampled > 0 ? sampled : count,elapsed,bytes};
+    }
+    /**
+     * Picks random keys of the tree.
+     *
+     * @param keys The keys of the tree.
+     * @param count The number of keys to pick.
+     * @param random The source of the picks.
+     * @return The picked keys.
+     */
+    private static float[] pick(float[] keys,int count,Random random){
+        float[] picked = new float[count];
+        for(int i = 0;i < count;i++){
+            picked[i] = keys[random.nextInt(keys.length)];
+        }
+        return picked;
+    }
+    /**
+     * Shuffles keys in place.
+     *
+     * @param keys The keys.
+     * @param random The source of the order.
+     */
+    private static void shuffle(float[] keys,Random random){
+        for(int i = keys.length - 1;i > 0;i--){
+            int j = random.nextInt(i + 1);
+            float temp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = temp;
+        }
+    }
+    /**
+     * Returns a percentile of sorted latency samples.
+     *
+     * @param samples The sorted samples.
+     * @param count The number of samples.
+     * @param fraction The percentile as a fraction between 0 and 1.
+     * @return The latency at the percentile, or 0 if there are no samples.
+     */
+    private static long percentile(long[] samples,int count,double fraction){
+        if(count == 0){
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return samples[Math.max(0,Math.min(count - 1,index))];
+    }
+    /**
+     * Returns the bytes allocated by the current thread so far, or 0 if the JVM can not tell.
+     *
+     * @return The allocated bytes.
+     */
+    private static long allocatedBytes(){
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean){
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}